@@ -1,30 +1,44 @@
 package edu.brown.cs.student.main.server;
 
-import static spark.Spark.after;
+import static spark.Spark.before;
 
 import edu.brown.cs.student.main.server.handlers.AddPinHandler;
 import edu.brown.cs.student.main.server.handlers.ClearUserHandler;
+import edu.brown.cs.student.main.server.handlers.DatasetRegistry;
 import edu.brown.cs.student.main.server.handlers.FilteredDataHandler;
 import edu.brown.cs.student.main.server.handlers.GeoJSONObject;
+import edu.brown.cs.student.main.server.handlers.GeoJSONResponses;
 import edu.brown.cs.student.main.server.handlers.KeywordFilterHandler;
 import edu.brown.cs.student.main.server.handlers.ListPinsHandler;
+import edu.brown.cs.student.main.server.handlers.LocateHandler;
+import edu.brown.cs.student.main.server.handlers.QueryHandler;
+import edu.brown.cs.student.main.server.handlers.ReloadHandler;
+import edu.brown.cs.student.main.server.handlers.TileHandler;
 import edu.brown.cs.student.main.server.handlers.Utils;
 import edu.brown.cs.student.main.server.handlers.census.BroadbandHandler;
+import edu.brown.cs.student.main.server.handlers.census.CacheStatsHandler;
 import edu.brown.cs.student.main.server.handlers.census.CensusAPISource;
+import edu.brown.cs.student.main.server.handlers.census.caching.CachingCensusSource;
+import edu.brown.cs.student.main.server.handlers.census.caching.CensusLog;
+import edu.brown.cs.student.main.server.handlers.census.caching.PrefetchedCensusSource;
 import edu.brown.cs.student.main.server.storage.FirebaseUtilities;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
 import java.io.IOException;
+import java.nio.file.Path;
 import spark.Filter;
 import spark.Spark;
 
 /** Top Level class for our project, utilizes spark to create and maintain our server. */
 public class Server {
+  // Where fetched census results are persisted between runs.
+  private static final String CENSUS_LOG_PATH = "data/census/broadband.log";
 
   public static void setUpServer() {
     int port = 3232;
     Spark.port(port);
 
-    after(
+    // A before filter, since streamed responses are committed before an after filter would run.
+    before(
         (Filter)
             (request, response) -> {
               response.header("Access-Control-Allow-Origin", "*");
@@ -36,13 +50,42 @@ public class Server {
     try {
       firebaseUtils = new FirebaseUtilities();
       geoJSONObject = Utils.getRedLiningTotal();
+      // Handlers read the dataset from the registry, which swaps in a new one on reload.
+      DatasetRegistry datasets = new DatasetRegistry(geoJSONObject, Utils::getRedLiningTotal);
+      try {
+        datasets.watch(Path.of(Utils.REDLINING_DATA_PATH));
+      } catch (IOException e) {
+        System.out.println("Not watching the redlining data for changes: " + e.getMessage());
+      }
 
       Spark.get("add-pin", new AddPinHandler(firebaseUtils));
       Spark.get("list-pins", new ListPinsHandler(firebaseUtils));
       Spark.get("clear-user", new ClearUserHandler(firebaseUtils));
-      Spark.get("filtered-geojson", new FilteredDataHandler(geoJSONObject));
-      Spark.get("filtered-keywords", new KeywordFilterHandler(geoJSONObject));
-      Spark.get("broadband", new BroadbandHandler(new CensusAPISource()));
+      Spark.get("filtered-geojson", new FilteredDataHandler(datasets));
+      Spark.get(
+          "filtered-keywords",
+          new KeywordFilterHandler(datasets, GeoJSONResponses.DEFAULT_STREAMING_THRESHOLD));
+      Spark.get("query", new QueryHandler(datasets, GeoJSONResponses.DEFAULT_STREAMING_THRESHOLD));
+      Spark.get("tiles/:z/:x/:y", new TileHandler(datasets, TileHandler.DEFAULT_MAX_BYTES));
+      Spark.get("locate", new LocateHandler(datasets, false));
+      Spark.get("locate-batch", new LocateHandler(datasets, true));
+      Spark.post("admin/reload", new ReloadHandler(datasets));
+      // Both broadband endpoints serve from a table of every county, fetched in bulk now and
+      // daily. Counties missing from it share one cache, persisted so restarts start warm.
+      CensusLog censusLog = null;
+      try {
+        censusLog = new CensusLog(Path.of(CENSUS_LOG_PATH));
+      } catch (IOException e) {
+        System.out.println("Caching census results only in memory: " + e.getMessage());
+      }
+      CensusAPISource censusAPI = new CensusAPISource();
+      CachingCensusSource cachedCensus = new CachingCensusSource(censusAPI, censusLog);
+      PrefetchedCensusSource census =
+          new PrefetchedCensusSource(censusAPI::getNationalBroadbandData, cachedCensus);
+      census.startRefreshing(PrefetchedCensusSource.DEFAULT_REFRESH_INTERVAL);
+      Spark.get("broadband", new BroadbandHandler(census));
+      Spark.get("broadband-batch", new BroadbandHandler(census, true));
+      Spark.get("cache-stats", new CacheStatsHandler(cachedCensus.caches()));
 
       Spark.notFound(
           (request, response) -> {
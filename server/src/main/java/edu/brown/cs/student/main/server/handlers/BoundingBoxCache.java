@@ -0,0 +1,115 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * A bounded cache of bounding box query results for the filtered-geojson endpoint. Clients panning
+ * around a city send slightly different bounds on every request, so each box is first snapped
+ * outward to a grid: nearby viewports snap to the same cells and share one cache entry. An entry
+ * holds the ids of every feature whose envelope intersects the snapped box, and each request
+ * narrows those down to its own bounds with {@link GeoJSONObject#refineBounds}, so the results are
+ * exactly what an uncached query would return.
+ *
+ * <p>Entries are weighed by their size in bytes and evicted least recently used first once the
+ * total passes the configured maximum. Hit and miss counts are kept. Entries are keyed by the
+ * version of the dataset they came from, so a reloaded dataset is never answered from stale
+ * entries, and {@link #invalidate} drops the old dataset's entries once it is swapped out.
+ */
+public class BoundingBoxCache {
+  public static final double DEFAULT_GRID_SIZE = 0.05; // Degrees, a few kilometers.
+  public static final long DEFAULT_MAX_BYTES = 16L << 20;
+
+  private static final int ENTRY_OVERHEAD_BYTES = 64; // The key, array header and map entry.
+  // Pads the snapped box so rounding in cell * gridSize can never shrink it past the real bounds.
+  private static final double EDGE_TOLERANCE = 1e-9;
+
+  private final double gridSize;
+  private final Cache<Cell, int[]> cache;
+
+  /** Creates a cache with the default grid size and maximum size. */
+  public BoundingBoxCache() {
+    this(DEFAULT_GRID_SIZE, DEFAULT_MAX_BYTES);
+  }
+
+  /**
+   * Creates a cache with the given grid size and maximum size.
+   *
+   * @param gridSize the size of a grid cell, in degrees of latitude and longitude.
+   * @param maxBytes the maximum total size of the cached results, in bytes.
+   */
+  public BoundingBoxCache(double gridSize, long maxBytes) {
+    if (!(gridSize > 0)) {
+      throw new IllegalArgumentException("The grid size must be positive.");
+    }
+    this.gridSize = gridSize;
+    this.cache =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((Cell cell, int[] ids) -> ENTRY_OVERHEAD_BYTES + ids.length * Integer.BYTES)
+            .recordStats()
+            .build();
+  }
+
+  /**
+   * Finds the features within the specified latitude and longitude bounds, like {@link
+   * GeoJSONObject#queryBounds}, answering from the cached results for the snapped box if present.
+   *
+   * @param dataset the dataset to query.
+   * @param minLat minimum latitude of area.
+   * @param maxLat maximum latitude of area.
+   * @param minLong minimum longitude of area.
+   * @param maxLong maximum longitude of area.
+   * @param exact whether to run the exact polygon/rectangle test on the candidates.
+   * @return the ids of the matching features, in feature order.
+   */
+  public int[] query(
+      GeoJSONObject dataset,
+      double minLat,
+      double maxLat,
+      double minLong,
+      double maxLong,
+      boolean exact) {
+    Cell cell =
+        new Cell(
+            dataset.version(),
+            (long) Math.floor(minLat / this.gridSize),
+            (long) Math.ceil(maxLat / this.gridSize),
+            (long) Math.floor(minLong / this.gridSize),
+            (long) Math.ceil(maxLong / this.gridSize));
+    int[] candidates = this.cache.getIfPresent(cell);
+    if (candidates == null) {
+      candidates =
+          dataset.queryBounds(
+              cell.minLat * this.gridSize - EDGE_TOLERANCE,
+              cell.maxLat * this.gridSize + EDGE_TOLERANCE,
+              cell.minLong * this.gridSize - EDGE_TOLERANCE,
+              cell.maxLong * this.gridSize + EDGE_TOLERANCE,
+              false);
+      this.cache.put(cell, candidates);
+    }
+    return dataset.refineBounds(candidates, minLat, maxLat, minLong, maxLong, exact);
+  }
+
+  /** Empties the cache, for example after the dataset is reloaded. */
+  public void invalidate() {
+    this.cache.invalidateAll();
+  }
+
+  /**
+   * Returns the hit, miss and eviction counts since the cache was created.
+   *
+   * @return the cache statistics.
+   */
+  public CacheStats stats() {
+    return this.cache.stats();
+  }
+
+  /**
+   * A bounding box snapped to the grid, as whole numbers of grid cells. The dataset's version is
+   * part of the key, so a query that raced with a reload can never store ids under the new dataset,
+   * and holding the version rather than the dataset never keeps an old dataset in memory.
+   */
+  private record Cell(String version, long minLat, long maxLat, long minLong, long maxLong) {}
+}
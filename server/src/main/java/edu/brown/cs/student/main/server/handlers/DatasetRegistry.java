@@ -0,0 +1,191 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Holds the redlining dataset the handlers serve, and swaps in a new one when the data is reloaded.
+ * A reload builds the new dataset and all of its indexes on a background thread, then publishes it
+ * with a single atomic reference swap. Handlers read {@link #current()} once at the start of each
+ * request and use that object throughout, so a request that started before a swap finishes on the
+ * old dataset, and the read path never takes a lock.
+ *
+ * <p>A reload is triggered by the admin/reload endpoint or by a watcher on the data file. Only one
+ * reload runs at a time, and a reload that fails to load anything keeps the current dataset.
+ */
+public class DatasetRegistry {
+  // Waits this long after a change to the data file, so a file still being written is not read.
+  private static final long WATCH_SETTLE_MILLIS = 1000;
+
+  private final AtomicReference<GeoJSONObject> current;
+  private final Supplier<GeoJSONObject> loader;
+  private final AtomicBoolean reloading = new AtomicBoolean(false);
+  private final List<Consumer<GeoJSONObject>> swapListeners = new CopyOnWriteArrayList<>();
+  private final ExecutorService reloadExecutor =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "dataset-reload");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  /**
+   * Creates a registry that always serves the same dataset and cannot reload.
+   *
+   * @param dataset the dataset to serve.
+   */
+  public DatasetRegistry(GeoJSONObject dataset) {
+    this(dataset, null);
+  }
+
+  /**
+   * Creates a registry that serves a dataset and reloads it with the given loader.
+   *
+   * @param dataset the dataset to serve until the first reload.
+   * @param loader builds a new, fully indexed dataset, or returns null if it cannot.
+   */
+  public DatasetRegistry(GeoJSONObject dataset, Supplier<GeoJSONObject> loader) {
+    this.current = new AtomicReference<>(dataset);
+    this.loader = loader;
+  }
+
+  /**
+   * Returns the dataset to serve. Read it once per request.
+   *
+   * @return the current dataset.
+   */
+  public GeoJSONObject current() {
+    return this.current.get();
+  }
+
+  /**
+   * Registers a callback run after every swap with the new dataset, for example to empty caches of
+   * the old one.
+   *
+   * @param listener the callback.
+   */
+  public void onSwap(Consumer<GeoJSONObject> listener) {
+    this.swapListeners.add(listener);
+  }
+
+  /**
+   * Starts a reload on the background thread, unless one is already running.
+   *
+   * @return true if a reload was started, false if one was already running or this registry cannot
+   *     reload.
+   */
+  public boolean reloadAsync() {
+    if (this.loader == null || !this.reloading.compareAndSet(false, true)) {
+      return false;
+    }
+    this.reloadExecutor.execute(
+        () -> {
+          try {
+            this.reload();
+          } finally {
+            this.reloading.set(false);
+          }
+        });
+    return true;
+  }
+
+  /**
+   * Returns whether a reload is running.
+   *
+   * @return true while a reload is building a new dataset.
+   */
+  public boolean isReloading() {
+    return this.reloading.get();
+  }
+
+  /** Builds a new dataset and swaps it in, keeping the current one if the load fails. */
+  private void reload() {
+    long start = System.currentTimeMillis();
+    GeoJSONObject dataset;
+    try {
+      dataset = this.loader.get();
+    } catch (RuntimeException e) {
+      System.out.println("Reload failed: " + e.getMessage());
+      return;
+    }
+    if (dataset == null) {
+      System.out.println("Reload failed; still serving the previous dataset.");
+      return;
+    }
+    this.current.set(dataset);
+    for (Consumer<GeoJSONObject> listener : this.swapListeners) {
+      listener.accept(dataset);
+    }
+    System.out.println(
+        "Reloaded "
+            + dataset.features.size()
+            + " features in "
+            + (System.currentTimeMillis() - start)
+            + " ms");
+  }
+
+  /**
+   * Starts a daemon thread that reloads the dataset whenever the given file is created or changed.
+   *
+   * @param file the data file to watch.
+   * @throws IOException if the file's directory cannot be watched.
+   */
+  public void watch(Path file) throws IOException {
+    Path directory = file.toAbsolutePath().getParent();
+    Path name = file.getFileName();
+    WatchService watcher = FileSystems.getDefault().newWatchService();
+    directory.register(
+        watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+    Thread thread =
+        new Thread(
+            () -> {
+              try {
+                while (true) {
+                  WatchKey key = watcher.take();
+                  boolean changed = isAbout(key, name);
+                  // Let the writer finish, folding any further events into this reload.
+                  WatchKey more;
+                  while (changed
+                      && (more = watcher.poll(WATCH_SETTLE_MILLIS, TimeUnit.MILLISECONDS))
+                          != null) {
+                    isAbout(more, name);
+                  }
+                  if (changed) {
+                    System.out.println(name + " changed; reloading.");
+                    this.reloadAsync();
+                  }
+                }
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            },
+            "dataset-watch");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** Whether a watch key's events touch the named file. Also resets the key. */
+  private static boolean isAbout(WatchKey key, Path name) {
+    boolean about = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      about |= name.equals(event.context());
+    }
+    key.reset();
+    return about;
+  }
+}
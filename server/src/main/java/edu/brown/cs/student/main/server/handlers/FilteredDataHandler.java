@@ -1,7 +1,6 @@
 package edu.brown.cs.student.main.server.handlers;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
 import spark.Request;
 import spark.Response;
 import spark.Route;
@@ -12,10 +11,31 @@ import spark.Route;
  */
 public class FilteredDataHandler implements Route {
 
-  public GeoJSONObject geoJSONObject;
+  private final DatasetRegistry datasets;
+  private final BoundingBoxCache boundsCache;
+  private final long streamingThreshold;
 
   public FilteredDataHandler(GeoJSONObject geoJSONObject) {
-    this.geoJSONObject = geoJSONObject;
+    this(new DatasetRegistry(geoJSONObject));
+  }
+
+  public FilteredDataHandler(DatasetRegistry datasets) {
+    this(datasets, new BoundingBoxCache(), GeoJSONResponses.DEFAULT_STREAMING_THRESHOLD);
+  }
+
+  /**
+   * @param datasets the registry holding the dataset to filter.
+   * @param boundsCache the cache bounding box queries are answered through. It is emptied whenever
+   *     the registry swaps in a new dataset.
+   * @param streamingThreshold the response size, in bytes, above which the response is streamed
+   *     with chunked transfer encoding instead of being assembled first.
+   */
+  public FilteredDataHandler(
+      DatasetRegistry datasets, BoundingBoxCache boundsCache, long streamingThreshold) {
+    this.datasets = datasets;
+    this.boundsCache = boundsCache;
+    this.streamingThreshold = streamingThreshold;
+    datasets.onSwap(dataset -> boundsCache.invalidate());
   }
 
   /**
@@ -23,28 +43,46 @@ public class FilteredDataHandler implements Route {
    *
    * @param request The request object providing information about the HTTP request
    * @param response The response object providing functionality for modifying the response
-   * @return The content to be set in the response
+   * @return An empty string, as the response body is written directly
+   * @throws IOException if writing the response fails
    */
   @Override
-  public Object handle(Request request, Response response) {
-    Map<String, Object> responseMap = new HashMap<>();
-    Double minLat = Double.parseDouble(request.queryParams("minLat"));
-    Double maxLat = Double.parseDouble(request.queryParams("maxLat"));
-    Double minLong = Double.parseDouble(request.queryParams("minLong"));
-    Double maxLong = Double.parseDouble(request.queryParams("maxLong"));
-
-    // If no parameters given, return the full GeoJSON data.
-    if (request.queryParams().isEmpty()) {
-      responseMap.put("data", geoJSONObject);
-      return Utils.toMoshiJson(responseMap);
-    }
+  public Object handle(Request request, Response response) throws IOException {
+    // Read the dataset once, so a reload during this request cannot mix two versions.
+    GeoJSONObject geoJSONObject = datasets.current();
 
-    // Filter the GeoJSON based on the parameters.
-    GeoJSONObject filteredGeoJSONObject =
-        geoJSONObject.filterData(minLat, maxLat, minLong, maxLong);
+    // If no bounds given, return the full GeoJSON data, precompressed unless a page is asked for.
+    String limit = request.queryParams("limit");
+    String cursor = request.queryParams("cursor");
+    int[] ids;
+    if (request.queryParams("minLat") == null
+        && request.queryParams("maxLat") == null
+        && request.queryParams("minLong") == null
+        && request.queryParams("maxLong") == null) {
+      if (!Pagination.isPaged(limit, cursor)) {
+        return GeoJSONResponses.dataset(geoJSONObject, request, response, streamingThreshold);
+      }
+      ids = geoJSONObject.allIds();
+    } else {
+      Double minLat = Double.parseDouble(request.queryParams("minLat"));
+      Double maxLat = Double.parseDouble(request.queryParams("maxLat"));
+      Double minLong = Double.parseDouble(request.queryParams("minLong"));
+      Double maxLong = Double.parseDouble(request.queryParams("maxLong"));
+      // Optional: also test each candidate's polygons against the bounds, not just its envelope.
+      boolean exact = Boolean.parseBoolean(request.queryParams("exact"));
 
-    responseMap.put("data", filteredGeoJSONObject);
+      // Filter the GeoJSON based on the parameters, answered by the cache or the spatial index.
+      ids = boundsCache.query(geoJSONObject, minLat, maxLat, minLong, maxLong, exact);
+    }
+
+    Pagination.Page page;
+    try {
+      page = Pagination.page(geoJSONObject, ids, limit, cursor);
+    } catch (IllegalArgumentException e) {
+      return Utils.failure(e.getMessage());
+    }
 
-    return Utils.toMoshiJson(responseMap);
+    // Write the response from the pre-encoded features, compressed if the client accepts gzip.
+    return GeoJSONResponses.page(geoJSONObject, page, request, response, streamingThreshold);
   }
 }
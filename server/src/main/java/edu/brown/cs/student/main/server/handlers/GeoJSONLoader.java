@@ -0,0 +1,162 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonReader;
+import com.squareup.moshi.Moshi;
+import edu.brown.cs.student.main.server.handlers.redlining.GeometryStore;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import okio.BufferedSource;
+import okio.Okio;
+
+/**
+ * Streams a GeoJSON FeatureCollection from disk with Moshi's JsonReader, decoding one feature at a
+ * time straight off a buffered file source. Neither the file's text nor any intermediate string
+ * copy of it is ever held in memory. Coordinates go directly into a columnar GeometryStore as
+ * primitive doubles, so they are never boxed either.
+ */
+public class GeoJSONLoader {
+  private static final int MAX_NESTING = 8;
+
+  /**
+   * Loads the FeatureCollection at the given path, then reports how many features were read and how
+   * long it took.
+   *
+   * @param filePath the path of the GeoJSON file.
+   * @return the loaded GeoJSONObject, not yet indexed.
+   * @throws IOException if the file cannot be read or is not valid JSON.
+   */
+  public static GeoJSONObject load(String filePath) throws IOException {
+    long start = System.nanoTime();
+    Moshi moshi = new Moshi.Builder().build();
+    JsonAdapter<GeoJSONObject.Properties> propertiesAdapter =
+        moshi.adapter(GeoJSONObject.Properties.class);
+    GeometryStore.Builder geometryBuilder = new GeometryStore.Builder();
+
+    GeoJSONObject geoJSONObject = new GeoJSONObject();
+    geoJSONObject.features = new ArrayList<>();
+    try (BufferedSource source = Okio.buffer(Okio.source(new File(filePath)));
+        JsonReader reader = JsonReader.of(source)) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        switch (reader.nextName()) {
+          case "type" -> geoJSONObject.type = reader.nextString();
+          case "features" -> {
+            reader.beginArray();
+            while (reader.hasNext()) {
+              geometryBuilder.beginFeature();
+              geoJSONObject.features.add(readFeature(reader, propertiesAdapter, geometryBuilder));
+            }
+            reader.endArray();
+          }
+          default -> reader.skipValue();
+        }
+      }
+      reader.endObject();
+    }
+
+    // Point every geometry at the finished store.
+    GeometryStore store = geometryBuilder.build();
+    geoJSONObject.geometryStore = store;
+    for (int i = 0; i < geoJSONObject.features.size(); i++) {
+      GeoJSONObject.Geometry geometry = geoJSONObject.features.get(i).geometry;
+      if (geometry != null) {
+        geometry.store = store;
+        geometry.index = i;
+      }
+    }
+
+    int count = geoJSONObject.features.size();
+    long millis = (System.nanoTime() - start) / 1_000_000;
+    System.out.println("Loaded " + count + " features from " + filePath + " in " + millis + " ms");
+    System.out.println("Stored " + store.vertexCount() + " vertices in the geometry store");
+    return geoJSONObject;
+  }
+
+  /** Reads one feature object; its coordinates go into the builder's current feature. */
+  private static GeoJSONObject.Feature readFeature(
+      JsonReader reader,
+      JsonAdapter<GeoJSONObject.Properties> propertiesAdapter,
+      GeometryStore.Builder geometryBuilder)
+      throws IOException {
+    GeoJSONObject.Feature feature = new GeoJSONObject.Feature();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "type" -> feature.type = reader.nextString();
+        case "properties" -> feature.properties = propertiesAdapter.fromJson(reader);
+        case "geometry" -> {
+          if (reader.peek() == JsonReader.Token.NULL) {
+            reader.nextNull();
+          } else {
+            feature.geometry = readGeometry(reader, geometryBuilder);
+          }
+        }
+        default -> reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return feature;
+  }
+
+  /** Reads one geometry object, streaming its coordinates into the builder. */
+  private static GeoJSONObject.Geometry readGeometry(
+      JsonReader reader, GeometryStore.Builder geometryBuilder) throws IOException {
+    GeoJSONObject.Geometry geometry = new GeoJSONObject.Geometry();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "type" -> geometry.type = reader.nextString();
+        case "coordinates" -> readCoordinates(reader, geometryBuilder);
+        default -> reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return geometry;
+  }
+
+  /**
+   * Reads nested coordinate arrays into the builder. The nesting is worked out from where the
+   * positions turn up, since the geometry's type may come after its coordinates: the array holding
+   * a position is a ring, and the array holding that ring is a polygon. This reads Polygon and
+   * MultiPolygon coordinates alike; positions nested less deeply than a ring are skipped.
+   */
+  private static void readCoordinates(JsonReader reader, GeometryStore.Builder geometryBuilder)
+      throws IOException {
+    int[] arrayIds = new int[MAX_NESTING]; // The array currently open at each depth.
+    int[] registered = new int[MAX_NESTING]; // The last array begun in the builder at each depth.
+    int nextId = 1;
+    int depth = -1;
+    do {
+      JsonReader.Token token = reader.peek();
+      if (token == JsonReader.Token.BEGIN_ARRAY && depth + 1 < MAX_NESTING) {
+        reader.beginArray();
+        arrayIds[++depth] = nextId++;
+      } else if (token == JsonReader.Token.END_ARRAY) {
+        reader.endArray();
+        depth--;
+      } else if (token == JsonReader.Token.NUMBER && depth >= 2) {
+        // A position: the array at depth - 1 is its ring, and the one at depth - 2 its polygon.
+        double x = reader.nextDouble();
+        double y = reader.nextDouble();
+        while (reader.hasNext()) {
+          reader.skipValue();
+        }
+        if (registered[depth - 2] != arrayIds[depth - 2]) {
+          geometryBuilder.beginPolygon();
+          registered[depth - 2] = arrayIds[depth - 2];
+        }
+        if (registered[depth - 1] != arrayIds[depth - 1]) {
+          geometryBuilder.beginRing();
+          registered[depth - 1] = arrayIds[depth - 1];
+        }
+        geometryBuilder.addVertex(x, y);
+        reader.endArray();
+        depth--;
+      } else {
+        reader.skipValue();
+      }
+    } while (depth >= 0);
+  }
+}
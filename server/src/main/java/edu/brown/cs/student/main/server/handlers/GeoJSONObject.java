@@ -1,19 +1,66 @@
 package edu.brown.cs.student.main.server.handlers;
 
+import com.squareup.moshi.JsonAdapter;
+import edu.brown.cs.student.main.server.handlers.redlining.AttributeIndex;
+import edu.brown.cs.student.main.server.handlers.redlining.DescriptionStore;
+import edu.brown.cs.student.main.server.handlers.redlining.FeatureFragments;
+import edu.brown.cs.student.main.server.handlers.redlining.GeometryStore;
+import edu.brown.cs.student.main.server.handlers.redlining.IntList;
+import edu.brown.cs.student.main.server.handlers.redlining.KeywordIndex;
+import edu.brown.cs.student.main.server.handlers.redlining.ParallelFilter;
+import edu.brown.cs.student.main.server.handlers.redlining.SpatialIndex;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * This class represents the GeoJSON data - it contains a list of features, and each feature
- * contains a type, a geometry (a huge list of coordinates), and a list of properties. Each list of
- * properties contains a name, a holc grade, and a hashmap of area description data, along other
- * properties.
+ * contains a type, a geometry (stored in a shared columnar GeometryStore rather than as nested
+ * lists of coordinates), and a list of properties. Each list of properties contains a name, a holc
+ * grade, and a hashmap of area description data, along other properties.
+ *
+ * <p>Once loaded, {@link #buildIndex()} precomputes the envelope of every feature and bulk loads a
+ * spatial index over them, and builds an inverted index over the area description text, so that
+ * neither bounding box nor keyword filters have to scan the whole feature list. It also encodes
+ * every feature's JSON once, so responses are assembled from those fragments instead of being
+ * serialized per request.
  */
 public class GeoJSONObject {
+  private static final byte[] RESPONSE_PREFIX =
+      "{\"data\":{\"features\":[".getBytes(StandardCharsets.UTF_8);
+
   public String type;
   public List<Feature> features;
 
+  // Set by GeoJSONLoader: the coordinates of every feature, in feature order.
+  transient GeometryStore geometryStore;
+  // Set by buildIndex or by reading a snapshot: every feature's area description data.
+  transient DescriptionStore descriptionStore;
+
+  // Transient so Moshi never serializes them; set by buildIndex or by reading a snapshot.
+  transient FeatureFragments fragments;
+  transient double[] envelopes; // minX, minY, maxX, maxY per feature; NaN if it has no vertices.
+  private transient byte[] responseSuffix;
+  transient volatile byte[] fullResponseGzip;
+  transient volatile String version;
+  transient KeywordIndex keywordIndex;
+  transient AttributeIndex gradeIndex;
+  transient AttributeIndex cityIndex;
+  transient volatile SpatialIndex spatialIndex; // Written last, so it guards both.
+  private transient volatile ParallelFilter parallelFilter = ParallelFilter.DEFAULT;
+
   public static class Feature {
     public String type;
     public Geometry geometry;
@@ -22,7 +69,9 @@ public class GeoJSONObject {
 
   public static class Geometry {
     public String type;
-    public List<List<List<List<Double>>>> coordinates;
+    // The coordinates live in the dataset's shared GeometryStore, and GeometryAdapter writes them.
+    public transient GeometryStore store;
+    public transient int index;
   }
 
   public static class Properties {
@@ -32,89 +81,477 @@ public class GeoJSONObject {
   }
 
   /**
-   * Filter the GeoJSON data to only include the data within the specified latitude and longitude //
-   * bounds.
+   * Precomputes the envelope (minimum and maximum longitude and latitude over every vertex) of each
+   * feature, then bulk loads the spatial index over those envelopes. Features without any
+   * coordinates get a NaN envelope and are left out of the index, as they can never match a bounds
+   * filter. Also dictionary encodes every feature's area description data, builds the keyword index
+   * over it and the grade and city indexes, and encodes every feature's JSON fragment.
+   */
+  public synchronized void buildIndex() {
+    if (this.geometryStore == null) {
+      throw new IllegalStateException("Only GeoJSON loaded by GeoJSONLoader can be indexed.");
+    }
+    int n = this.features.size();
+    this.encodeDescriptions();
+    this.fragments = encodeFeatures(this.features);
+    this.keywordIndex = new KeywordIndex(this.descriptions());
+    this.keywordIndex.useParallelFilter(this.parallelFilter);
+    this.buildAttributeIndexes();
+
+    this.envelopes = this.geometryStore.envelopes();
+    IntList ids = new IntList();
+    double[] bounds = new double[n * 4];
+    for (int i = 0; i < n; i++) {
+      if (!Double.isNaN(this.envelopes[i * 4])) {
+        System.arraycopy(this.envelopes, i * 4, bounds, ids.size() * 4, 4);
+        ids.add(i);
+      }
+    }
+    this.spatialIndex =
+        new SpatialIndex(
+            ids.toArray(),
+            Arrays.copyOf(bounds, ids.size() * 4),
+            SpatialIndex.DEFAULT_NODE_CAPACITY);
+  }
+
+  /**
+   * Moves every feature's area description data into one dictionary encoded DescriptionStore, and
+   * replaces each parsed map with a view of the store, so the parsed maps and their many duplicate
+   * strings can be collected.
+   */
+  private void encodeDescriptions() {
+    DescriptionStore.Builder builder = new DescriptionStore.Builder();
+    for (Map<String, String> description : this.descriptions()) {
+      builder.add(description);
+    }
+    this.useDescriptions(builder.build());
+  }
+
+  /**
+   * Points every feature's area description data at its view in a store.
+   *
+   * @param store the store holding every feature's description, in feature order.
+   */
+  void useDescriptions(DescriptionStore store) {
+    this.descriptionStore = store;
+    for (int i = 0; i < this.features.size(); i++) {
+      Feature feature = this.features.get(i);
+      if (feature != null && feature.properties != null) {
+        feature.properties.area_description_data = store.description(i);
+      }
+    }
+  }
+
+  /**
+   * Sets the filter that large exact polygon and keyword candidate sets are checked on, in place of
+   * {@link ParallelFilter#DEFAULT}.
+   *
+   * @param parallelFilter the filter to use.
+   */
+  public void useParallelFilter(ParallelFilter parallelFilter) {
+    this.parallelFilter = parallelFilter;
+    if (this.keywordIndex != null) {
+      this.keywordIndex.useParallelFilter(parallelFilter);
+    }
+  }
+
+  /**
+   * Builds the dictionary encoded indexes over every feature's HOLC grade and city, and replaces
+   * each feature's grade and city with the index's shared instance of that value, so there is one
+   * String per distinct value rather than one per feature. They are cheap to build, so snapshots
+   * rebuild them rather than storing them.
+   */
+  void buildAttributeIndexes() {
+    List<String> grades = new ArrayList<>(this.features.size());
+    List<String> cities = new ArrayList<>(this.features.size());
+    for (Feature feature : this.features) {
+      boolean hasProperties = feature != null && feature.properties != null;
+      grades.add(hasProperties ? feature.properties.holc_grade : null);
+      cities.add(hasProperties ? feature.properties.city : null);
+    }
+    this.gradeIndex = new AttributeIndex(grades);
+    this.cityIndex = new AttributeIndex(cities);
+    for (int i = 0; i < this.features.size(); i++) {
+      Feature feature = this.features.get(i);
+      if (feature != null && feature.properties != null) {
+        feature.properties.holc_grade = this.gradeIndex.value(i);
+        feature.properties.city = this.cityIndex.value(i);
+      }
+    }
+  }
+
+  /**
+   * Filter the GeoJSON data to only include the features whose envelope intersects the specified
+   * latitude and longitude bounds.
    *
    * @param minLat minimum latitude of area.
    * @param maxLat maximum latitude of area.
    * @param minLong minimum longitude of area.
    * @param maxLong maximum longitude of area.
-   * @return
+   * @return a new GeoJSONObject with only the features within the bounds.
    */
   public GeoJSONObject filterData(Double minLat, Double maxLat, Double minLong, Double maxLong) {
+    return this.subset(this.queryBounds(minLat, maxLat, minLong, maxLong, false));
+  }
+
+  /**
+   * Filter the GeoJSON data to only include the features within the specified latitude and
+   * longitude bounds. See {@link #queryBounds}.
+   *
+   * @param minLat minimum latitude of area.
+   * @param maxLat maximum latitude of area.
+   * @param minLong minimum longitude of area.
+   * @param maxLong maximum longitude of area.
+   * @param exact whether to run the exact polygon/rectangle test on the candidates.
+   * @return a new GeoJSONObject with only the features within the bounds.
+   */
+  public GeoJSONObject filterData(
+      double minLat, double maxLat, double minLong, double maxLong, boolean exact) {
+    return this.subset(this.queryBounds(minLat, maxLat, minLong, maxLong, exact));
+  }
 
-    List<Feature> filteredFeatures =
-        features.stream()
-            .filter(feature -> isFeatureWithinBounds(feature, minLat, maxLat, minLong, maxLong))
-            .collect(Collectors.toList());
+  /**
+   * Finds the features within the specified latitude and longitude bounds. Candidates come from the
+   * spatial index by envelope intersection; when exact is set, each candidate's polygons are also
+   * tested against the bounds rectangle, so features whose envelope overlaps the bounds but whose
+   * shape does not are dropped.
+   *
+   * @param minLat minimum latitude of area.
+   * @param maxLat maximum latitude of area.
+   * @param minLong minimum longitude of area.
+   * @param maxLong maximum longitude of area.
+   * @param exact whether to run the exact polygon/rectangle test on the candidates.
+   * @return the ids of the matching features, in feature order.
+   */
+  public int[] queryBounds(
+      double minLat, double maxLat, double minLong, double maxLong, boolean exact) {
+    this.ensureIndexed();
+    int[] ids = this.spatialIndex.search(minLong, minLat, maxLong, maxLat);
+    return exact ? this.exactMatches(ids, minLat, maxLat, minLong, maxLong) : ids;
+  }
 
-    GeoJSONObject filteredGeoJSONObject = new GeoJSONObject();
-    filteredGeoJSONObject.type = this.type;
-    filteredGeoJSONObject.features = filteredFeatures;
+  /**
+   * Narrows the features found for a larger box, such as a cached query for a box snapped to a
+   * grid, down to the ones {@link #queryBounds} would find for the given bounds. Only the
+   * candidates are tested, never the whole dataset.
+   *
+   * @param candidates the ids of features found for a box containing these bounds, in feature
+   *     order.
+   * @param minLat minimum latitude of area.
+   * @param maxLat maximum latitude of area.
+   * @param minLong minimum longitude of area.
+   * @param maxLong maximum longitude of area.
+   * @param exact whether to run the exact polygon/rectangle test on the remaining candidates.
+   * @return the ids of the matching features, in feature order.
+   */
+  public int[] refineBounds(
+      int[] candidates,
+      double minLat,
+      double maxLat,
+      double minLong,
+      double maxLong,
+      boolean exact) {
+    this.ensureIndexed();
+    IntList matches = new IntList();
+    for (int id : candidates) {
+      if (this.envelopes[id * 4] <= maxLong
+          && this.envelopes[id * 4 + 2] >= minLong
+          && this.envelopes[id * 4 + 1] <= maxLat
+          && this.envelopes[id * 4 + 3] >= minLat) {
+        matches.add(id);
+      }
+    }
+    int[] ids = matches.toArray();
+    return exact ? this.exactMatches(ids, minLat, maxLat, minLong, maxLong) : ids;
+  }
 
-    return filteredGeoJSONObject;
+  /**
+   * Keeps the features whose polygons really intersect the bounds. A feature whose envelope lies
+   * entirely inside the bounds is kept without testing its polygons. Large candidate sets are
+   * tested in parallel.
+   */
+  private int[] exactMatches(
+      int[] ids, double minLat, double maxLat, double minLong, double maxLong) {
+    double[] envelopes = this.envelopes;
+    GeometryStore store = this.geometryStore;
+    return this.parallelFilter.filter(
+        ids,
+        id -> {
+          boolean contained =
+              envelopes[id * 4] >= minLong
+                  && envelopes[id * 4 + 2] <= maxLong
+                  && envelopes[id * 4 + 1] >= minLat
+                  && envelopes[id * 4 + 3] <= maxLat;
+          return contained || store.intersectsRect(id, minLong, minLat, maxLong, maxLat);
+        });
   }
 
   /**
-   * Filter the GeoJSON data to only include features with the specified keyword in its description.
+   * Finds the features containing a point. The spatial index narrows the candidates to the features
+   * whose envelope contains the point, then each candidate's rings are ray cast against it.
    *
-   * @param keyWord
-   * @return
+   * @param lat the point's latitude.
+   * @param lng the point's longitude.
+   * @return the ids of the features containing the point, in feature order.
+   */
+  public int[] locate(double lat, double lng) {
+    this.ensureIndexed();
+    IntList matches = new IntList();
+    for (int id : this.spatialIndex.search(lng, lat, lng, lat)) {
+      if (this.geometryStore.containsPoint(id, lng, lat)) {
+        matches.add(id);
+      }
+    }
+    return matches.toArray();
+  }
+
+  /**
+   * Filter the GeoJSON data to only include features with the specified keyword in its description,
+   * ignoring case.
+   *
+   * @param keyWord the text to look for.
+   * @return a new GeoJSONObject with only the matching features.
    */
   public GeoJSONObject filterKeyWords(String keyWord) {
-    List<Feature> filteredFeatures =
-        features.stream()
-            .filter(feature -> isFeatureWithDescription(feature, keyWord))
-            .collect(Collectors.toList());
+    return this.filterKeyWords(keyWord == null ? List.of() : List.of(keyWord), true, false);
+  }
 
-    GeoJSONObject filteredGeoJSONObject = new GeoJSONObject();
-    filteredGeoJSONObject.type = this.type;
-    filteredGeoJSONObject.features = filteredFeatures;
-    return filteredGeoJSONObject;
+  /**
+   * Filter the GeoJSON data to only include features whose description matches the given terms. See
+   * {@link #queryKeyWords}.
+   *
+   * @param terms the terms to look for.
+   * @param matchAll true if every term must match (AND), false if any term may match (OR).
+   * @param wholeTokens true to match terms as whole words, false to match them as substrings.
+   * @return a new GeoJSONObject with only the matching features.
+   */
+  public GeoJSONObject filterKeyWords(List<String> terms, boolean matchAll, boolean wholeTokens) {
+    return this.subset(this.queryKeyWords(terms, matchAll, wholeTokens));
+  }
+
+  /**
+   * Finds the features whose description matches the given terms, answered from the keyword index's
+   * postings lists. Matching ignores case.
+   *
+   * @param terms the terms to look for.
+   * @param matchAll true if every term must match (AND), false if any term may match (OR).
+   * @param wholeTokens true to match terms as whole words, false to match them as substrings.
+   * @return the ids of the matching features, in feature order.
+   */
+  public int[] queryKeyWords(List<String> terms, boolean matchAll, boolean wholeTokens) {
+    this.ensureIndexed();
+    return this.keywordIndex.search(terms, matchAll, wholeTokens);
+  }
+
+  /**
+   * Assembles the {"data": ...} response for the given features from their pre-encoded fragments.
+   * The bytes are the same JSON that Utils.toMoshiJson would produce for a map from "data" to a
+   * GeoJSONObject holding those features.
+   *
+   * @param ids the ids of the features to include, in order.
+   * @return the response body as UTF-8 JSON.
+   */
+  public byte[] toResponseJson(int[] ids) {
+    this.ensureIndexed();
+    return this.fragments.assemble(RESPONSE_PREFIX, ids, this.responseSuffix());
+  }
+
+  /**
+   * Writes the same bytes as {@link #toResponseJson(int[])} straight to a stream, one feature
+   * fragment at a time, without ever assembling the whole response in memory.
+   *
+   * @param out the stream to write to.
+   * @param ids the ids of the features to include, in order.
+   * @throws IOException if the stream fails.
+   */
+  public void writeResponseJson(OutputStream out, int[] ids) throws IOException {
+    this.writeResponseJson(out, ids, null);
+  }
+
+  /**
+   * Writes a response holding one page of results to a stream, one feature fragment at a time. The
+   * cursor for the next page, if any, is written as a next_cursor field beside the data.
+   *
+   * @param out the stream to write to.
+   * @param ids the ids of the features to include, in order.
+   * @param nextCursor the cursor of the next page, or null if this is the last page.
+   * @throws IOException if the stream fails.
+   */
+  public void writeResponseJson(OutputStream out, int[] ids, String nextCursor) throws IOException {
+    this.ensureIndexed();
+    out.write(RESPONSE_PREFIX);
+    this.fragments.writeArray(out, ids);
+    out.write(this.responseSuffix(nextCursor));
+  }
+
+  /**
+   * Returns the size in bytes of the response {@link #toResponseJson(int[])} would build.
+   *
+   * @param ids the ids of the features to include.
+   * @return the response size in bytes.
+   */
+  public long responseSize(int[] ids) {
+    return this.responseSize(ids, null);
+  }
+
+  /**
+   * Returns the size in bytes of the response {@link #writeResponseJson(OutputStream, int[],
+   * String)} would write.
+   *
+   * @param ids the ids of the features to include.
+   * @param nextCursor the cursor of the next page, or null if this is the last page.
+   * @return the response size in bytes.
+   */
+  public long responseSize(int[] ids, String nextCursor) {
+    this.ensureIndexed();
+    return RESPONSE_PREFIX.length
+        + this.fragments.arraySize(ids)
+        + this.responseSuffix(nextCursor).length;
+  }
+
+  /**
+   * Returns the ids of every feature, in order.
+   *
+   * @return the ids 0 through the number of features minus one.
+   */
+  public int[] allIds() {
+    return IntStream.range(0, this.features.size()).toArray();
+  }
+
+  /**
+   * Assembles the {"data": ...} response for the whole dataset from the pre-encoded fragments.
+   *
+   * @return the response body as UTF-8 JSON.
+   */
+  public byte[] toResponseJson() {
+    return this.toResponseJson(this.allIds());
   }
 
-  private boolean isFeatureWithDescription(Feature feature, String keyWord) {
-    if (feature == null
-        || feature.properties == null
-        || feature.properties.area_description_data.isEmpty()) {
-      return false;
+  /**
+   * Returns the gzip compressed response for the whole dataset, compressing it at the highest level
+   * the first time it is asked for.
+   *
+   * @return the gzip body of {@link #toResponseJson()}.
+   */
+  public byte[] fullResponseGzip() {
+    if (this.fullResponseGzip == null) {
+      synchronized (this) {
+        if (this.fullResponseGzip == null) {
+          ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+          try (GZIPOutputStream gzip =
+              new GZIPOutputStream(bytes, 64 * 1024) {
+                {
+                  this.def.setLevel(Deflater.BEST_COMPRESSION);
+                }
+              }) {
+            this.writeResponseJson(gzip, this.allIds());
+          } catch (IOException e) {
+            throw new UncheckedIOException(e); // Never thrown by in-memory streams.
+          }
+          this.fullResponseGzip = bytes.toByteArray();
+        }
+      }
     }
-    Map<String, String> areaDescriptionData = feature.properties.area_description_data;
-    // probably need to parse keywords array into an array of strings separatted by spaces
-    for (String description : areaDescriptionData.values()) {
-      if (description.contains(keyWord)) {
-        return true;
+    return this.fullResponseGzip;
+  }
+
+  /**
+   * Returns a fingerprint of the dataset's contents, for building ETags: a prefix of the SHA-256
+   * digest of the full dataset response. Any change to the data changes it, and reloading unchanged
+   * data keeps it, so clients' cached responses stay valid across restarts.
+   *
+   * @return the version, as 16 lowercase hex digits.
+   */
+  public String version() {
+    if (this.version == null) {
+      MessageDigest digest = GeoJSONResponses.sha256();
+      try (OutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+        this.writeResponseJson(out, this.allIds());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e); // Never thrown by the null stream.
       }
+      this.version = HexFormat.of().formatHex(digest.digest(), 0, 8);
     }
-    return false;
-    // go through the area description and check if each value has keyword
+    return this.version;
   }
 
-  private boolean isFeatureWithinBounds(
-      Feature feature, Double minLat, Double maxLat, Double minLong, Double maxLong) {
+  /**
+   * The bytes after the features in a response. Moshi writes a GeoJSONObject's fields in
+   * alphabetical order, so the type comes after the features. Computed once; racing threads would
+   * only compute the same bytes twice.
+   */
+  private byte[] responseSuffix() {
+    if (this.responseSuffix == null) {
+      String suffix = "]" + (this.type == null ? "" : ",\"type\":" + quote(this.type)) + "}}";
+      this.responseSuffix = suffix.getBytes(StandardCharsets.UTF_8);
+    }
+    return this.responseSuffix;
+  }
 
-    // Check for null feature or geometry
-    if (feature == null || feature.geometry == null || feature.geometry.coordinates.isEmpty()) {
-      return false;
+  /** The bytes after the features, with the next page's cursor closing the outer object. */
+  private byte[] responseSuffix(String nextCursor) {
+    byte[] suffix = this.responseSuffix();
+    if (nextCursor == null) {
+      return suffix;
     }
+    // Cursors are base64url, so they never need escaping.
+    String field = ",\"next_cursor\":\"" + nextCursor + "\"}";
+    byte[] cursorField = field.getBytes(StandardCharsets.UTF_8);
+    byte[] withCursor = Arrays.copyOf(suffix, suffix.length - 1 + cursorField.length);
+    System.arraycopy(cursorField, 0, withCursor, suffix.length - 1, cursorField.length);
+    return withCursor;
+  }
 
-    try {
-      // Access the first point of the first list of lists of lists of coordinates
-      List<List<List<List<Double>>>> coordinates = feature.geometry.coordinates;
-      List<Double> firstPoint = coordinates.get(0).get(0).get(0);
+  /** Builds a GeoJSONObject holding the given features of this one. */
+  private GeoJSONObject subset(int[] ids) {
+    List<Feature> filteredFeatures = new ArrayList<>(ids.length);
+    for (int id : ids) {
+      filteredFeatures.add(this.features.get(id));
+    }
 
-      // Check if the first point is within bounds
-      Double longitude = firstPoint.get(0);
-      Double latitude = firstPoint.get(1);
+    GeoJSONObject filteredGeoJSONObject = new GeoJSONObject();
+    filteredGeoJSONObject.type = this.type;
+    filteredGeoJSONObject.features = filteredFeatures;
+    return filteredGeoJSONObject;
+  }
 
-      boolean inBounds =
-          longitude >= minLong && longitude <= maxLong && latitude >= minLat && latitude <= maxLat;
+  /** Encodes every feature's JSON once, with the same Moshi setup Utils.toMoshiJson uses. */
+  private static FeatureFragments encodeFeatures(List<Feature> features) {
+    JsonAdapter<Feature> adapter = Utils.buildMoshi().adapter(Feature.class);
+    FeatureFragments.Builder builder = new FeatureFragments.Builder();
+    for (Feature feature : features) {
+      builder.add(adapter.toJson(feature).getBytes(StandardCharsets.UTF_8));
+    }
+    return builder.build();
+  }
 
-      return inBounds;
-    } catch (IndexOutOfBoundsException e) {
-      // Catch any exceptions related to accessing the nested lists, returning false in such cases
-      System.out.println("Exception accessing coordinates: " + e.getMessage());
-      return false;
+  private static String quote(String value) {
+    return Utils.buildMoshi().adapter(String.class).toJson(value);
+  }
+
+  /**
+   * Lists the area description data of every feature in feature order, with null for features that
+   * have none. This is what the keyword index is built over.
+   *
+   * @return the descriptions, indexed by feature id.
+   */
+  List<Map<String, String>> descriptions() {
+    List<Map<String, String>> descriptions = new ArrayList<>(this.features.size());
+    for (Feature feature : this.features) {
+      boolean described = feature != null && feature.properties != null;
+      descriptions.add(described ? feature.properties.area_description_data : null);
+    }
+    return descriptions;
+  }
+
+  /** Builds the indexes first if this object was never indexed. */
+  void ensureIndexed() {
+    if (this.spatialIndex == null) {
+      synchronized (this) {
+        if (this.spatialIndex == null) {
+          this.buildIndex();
+        }
+      }
     }
   }
 }
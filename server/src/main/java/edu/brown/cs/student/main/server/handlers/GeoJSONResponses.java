@@ -0,0 +1,275 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.zip.GZIPOutputStream;
+import spark.Request;
+import spark.Response;
+
+/**
+ * Writes the GeoJSON endpoints' responses. Every response carries a strong ETag made from the
+ * dataset's version and the request's path and query parameters, so a client repeating a request
+ * with If-None-Match gets a 304 with no body. Clients that accept gzip get a gzip body: the whole
+ * dataset is compressed once at load time, and everything else is compressed as it is written.
+ *
+ * <p>Bodies are written straight to the servlet output stream rather than returned to Spark, which
+ * would otherwise compress a gzip response a second time. Responses under the streaming threshold
+ * are sent with a Content-Length. Larger ones, gzip ones that were not precompressed, and any
+ * request passing stream=true are sent with chunked transfer encoding as they are written, so the
+ * full body is never held in memory. The client gets the same JSON in every case.
+ *
+ * <p>Brotli is not offered, as the JDK has no brotli encoder.
+ */
+public class GeoJSONResponses {
+  /** Responses larger than this many bytes are streamed rather than sent with a length. */
+  public static final long DEFAULT_STREAMING_THRESHOLD = 1 << 20;
+
+  private static final int GZIP_BUFFER_BYTES = 64 * 1024;
+
+  /** Writes a response body to a stream. */
+  @FunctionalInterface
+  private interface Body {
+    void writeTo(OutputStream out) throws IOException;
+  }
+
+  /**
+   * Sends the {"data": ...} GeoJSON response for the given features.
+   *
+   * @param geoJSONObject the dataset the ids refer to.
+   * @param ids the ids of the features to send, in order.
+   * @param request the request being answered.
+   * @param response the response to write to.
+   * @param streamingThreshold the response size, in bytes, above which the body is streamed.
+   * @return an empty string, as the body has already been written.
+   * @throws IOException if writing the body fails.
+   */
+  public static Object features(
+      GeoJSONObject geoJSONObject,
+      int[] ids,
+      Request request,
+      Response response,
+      long streamingThreshold)
+      throws IOException {
+    return send(
+        geoJSONObject,
+        request,
+        response,
+        geoJSONObject.responseSize(ids),
+        out -> geoJSONObject.writeResponseJson(out, ids),
+        null,
+        streamingThreshold);
+  }
+
+  /**
+   * Sends the {"data": ...} GeoJSON response for one page of features, with a next_cursor field
+   * beside the data when there are more pages.
+   *
+   * @param geoJSONObject the dataset the page's ids refer to.
+   * @param page the page to send.
+   * @param request the request being answered.
+   * @param response the response to write to.
+   * @param streamingThreshold the response size, in bytes, above which the body is streamed.
+   * @return an empty string, as the body has already been written.
+   * @throws IOException if writing the body fails.
+   */
+  public static Object page(
+      GeoJSONObject geoJSONObject,
+      Pagination.Page page,
+      Request request,
+      Response response,
+      long streamingThreshold)
+      throws IOException {
+    return send(
+        geoJSONObject,
+        request,
+        response,
+        geoJSONObject.responseSize(page.ids(), page.nextCursor()),
+        out -> geoJSONObject.writeResponseJson(out, page.ids(), page.nextCursor()),
+        null,
+        streamingThreshold);
+  }
+
+  /**
+   * Sends the {"data": ...} GeoJSON response for the whole dataset, using the gzip body
+   * precompressed at load time when the client accepts gzip.
+   *
+   * @param geoJSONObject the dataset to send.
+   * @param request the request being answered.
+   * @param response the response to write to.
+   * @param streamingThreshold the response size, in bytes, above which the body is streamed.
+   * @return an empty string, as the body has already been written.
+   * @throws IOException if writing the body fails.
+   */
+  public static Object dataset(
+      GeoJSONObject geoJSONObject, Request request, Response response, long streamingThreshold)
+      throws IOException {
+    int[] ids = geoJSONObject.allIds();
+    return send(
+        geoJSONObject,
+        request,
+        response,
+        geoJSONObject.responseSize(ids),
+        out -> geoJSONObject.writeResponseJson(out, ids),
+        geoJSONObject.fullResponseGzip(),
+        streamingThreshold);
+  }
+
+  /**
+   * Sends an already built JSON body derived from a dataset, such as a tile.
+   *
+   * @param geoJSONObject the dataset the body was built from.
+   * @param body the UTF-8 JSON body.
+   * @param request the request being answered.
+   * @param response the response to write to.
+   * @return an empty string, as the body has already been written.
+   * @throws IOException if writing the body fails.
+   */
+  public static Object json(
+      GeoJSONObject geoJSONObject, byte[] body, Request request, Response response)
+      throws IOException {
+    return send(
+        geoJSONObject,
+        request,
+        response,
+        body.length,
+        out -> out.write(body),
+        null,
+        Long.MAX_VALUE);
+  }
+
+  private static Object send(
+      GeoJSONObject geoJSONObject,
+      Request request,
+      Response response,
+      long size,
+      Body body,
+      byte[] precompressed,
+      long streamingThreshold)
+      throws IOException {
+    boolean gzip = acceptsGzip(request.headers("Accept-Encoding"));
+    String etag = etag(geoJSONObject, request, gzip);
+    response.type("application/json");
+    response.header("Vary", "Accept-Encoding");
+    response.header("ETag", etag);
+    if (matches(request.headers("If-None-Match"), etag)) {
+      response.status(304); // Not Modified
+      return "";
+    }
+
+    OutputStream out = response.raw().getOutputStream();
+    if (gzip) {
+      response.header("Content-Encoding", "gzip");
+      if (precompressed != null) {
+        response.raw().setContentLengthLong(precompressed.length);
+        out.write(precompressed);
+      } else {
+        GZIPOutputStream gzipOut = new GZIPOutputStream(out, GZIP_BUFFER_BYTES);
+        body.writeTo(gzipOut);
+        gzipOut.finish();
+      }
+    } else {
+      boolean stream =
+          Boolean.parseBoolean(request.queryParams("stream")) || size > streamingThreshold;
+      if (!stream) {
+        response.raw().setContentLengthLong(size);
+      }
+      body.writeTo(out);
+    }
+    // Flushing commits the response, so Spark will not write a body of its own after this.
+    out.flush();
+    return "";
+  }
+
+  /**
+   * Builds a strong ETag from the dataset version, the path, every query parameter (sorted, so
+   * their order does not matter) and the content coding, since a gzip body is a different
+   * representation from the plain one.
+   */
+  private static String etag(GeoJSONObject geoJSONObject, Request request, boolean gzip) {
+    StringBuilder query = new StringBuilder(String.valueOf(request.pathInfo()));
+    for (String param : new TreeSet<>(request.queryParams())) {
+      query.append('&').append(param).append('=').append(request.queryParams(param));
+    }
+    return "\""
+        + geoJSONObject.version()
+        + "-"
+        + digest(query.toString().getBytes(StandardCharsets.UTF_8))
+        + (gzip ? "-gzip" : "")
+        + "\"";
+  }
+
+  /**
+   * Returns the first 16 hex digits of the SHA-256 digest of some bytes.
+   *
+   * @param bytes the bytes to digest.
+   * @return the digest prefix, in lowercase hex.
+   */
+  static String digest(byte[] bytes) {
+    return HexFormat.of().formatHex(sha256().digest(bytes), 0, 8);
+  }
+
+  /**
+   * Returns a new SHA-256 message digest.
+   *
+   * @return the digest.
+   */
+  static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("Every JDK provides SHA-256.", e);
+    }
+  }
+
+  /** Whether an If-None-Match header lists the ETag, ignoring weak validator prefixes. */
+  private static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String candidate : ifNoneMatch.split(",")) {
+      String tag = candidate.trim();
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals("*") || tag.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Whether an Accept-Encoding header allows gzip, honoring q=0 exclusions. */
+  private static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String coding : acceptEncoding.toLowerCase(Locale.ROOT).split(",")) {
+      String[] parts = coding.split(";");
+      String name = parts[0].trim();
+      if (!name.equals("gzip") && !name.equals("*")) {
+        continue;
+      }
+      boolean refused = false;
+      for (int i = 1; i < parts.length; i++) {
+        String parameter = parts[i].trim();
+        if (parameter.startsWith("q=")) {
+          try {
+            refused = Double.parseDouble(parameter.substring(2)) == 0;
+          } catch (NumberFormatException e) {
+            refused = true;
+          }
+        }
+      }
+      if (!refused) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
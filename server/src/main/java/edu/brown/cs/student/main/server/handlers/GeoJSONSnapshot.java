@@ -0,0 +1,270 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import edu.brown.cs.student.main.server.handlers.redlining.DescriptionStore;
+import edu.brown.cs.student.main.server.handlers.redlining.FeatureFragments;
+import edu.brown.cs.student.main.server.handlers.redlining.GeometryStore;
+import edu.brown.cs.student.main.server.handlers.redlining.KeywordIndex;
+import edu.brown.cs.student.main.server.handlers.redlining.SnapshotReader;
+import edu.brown.cs.student.main.server.handlers.redlining.SnapshotWriter;
+import edu.brown.cs.student.main.server.handlers.redlining.SpatialIndex;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A binary snapshot of a loaded and indexed GeoJSONObject. It is written once from the JSON source,
+ * and later server starts memory-map it instead of reparsing the JSON and rebuilding the indexes.
+ *
+ * <p>The file holds, in order: a magic number and format version, the size and modification time of
+ * the JSON source it was written from, a table of every distinct string (types, cities and grades),
+ * each feature's string table references, the dictionary encoded description store, the geometry
+ * store's arrays, the pre-encoded feature JSON fragments, the packed spatial index, the keyword
+ * index's postings lists, and last the dataset's version and the gzip body of the full dataset
+ * response, which are slow to compute at every start.
+ */
+public class GeoJSONSnapshot {
+  private static final int MAGIC = 0x484F4C43; // "HOLC"
+  private static final int VERSION = 6;
+
+  private static final int HAS_GEOMETRY = 1;
+  private static final int HAS_PROPERTIES = 2;
+
+  /**
+   * The size and modification time of a JSON source, recorded in the snapshot written from it. A
+   * replaced source almost never matches both, even when it was copied with its old timestamp.
+   *
+   * @param size the file's size in bytes.
+   * @param lastModified the file's modification time, in milliseconds since the epoch.
+   */
+  public record Source(long size, long lastModified) {
+    /**
+     * Reads a file's size and modification time.
+     *
+     * @param path the path of the file.
+     * @return its attributes.
+     * @throws IOException if the file cannot be read, for example because it does not exist.
+     */
+    public static Source of(String path) throws IOException {
+      Path file = Path.of(path);
+      return new Source(Files.size(file), Files.getLastModifiedTime(file).toMillis());
+    }
+  }
+
+  /**
+   * Checks whether a snapshot exists and was written from the JSON source as it is now: the size
+   * and modification time recorded in its header must both match the source's exactly. If the
+   * source is missing, the snapshot is all there is to serve, so it counts as fresh.
+   *
+   * @param snapshotPath the path of the snapshot.
+   * @param sourcePath the path of the JSON source.
+   * @return true if the snapshot can be used in place of the source.
+   */
+  public static boolean isFresh(String snapshotPath, String sourcePath) {
+    if (!new File(snapshotPath).isFile()) {
+      return false;
+    }
+    if (!new File(sourcePath).exists()) {
+      return true;
+    }
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotPath), 32))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return false;
+      }
+      return new Source(in.readLong(), in.readLong()).equals(Source.of(sourcePath));
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Writes an indexed GeoJSONObject to a snapshot file. The file is written beside its final path
+   * and then moved into place, so a reader never sees a half-written snapshot.
+   *
+   * @param geoJSONObject the indexed data to write.
+   * @param snapshotPath the path to write to.
+   * @param source the attributes of the JSON source the data was loaded from, read before it was.
+   * @throws IOException if the file cannot be written.
+   */
+  public static void write(GeoJSONObject geoJSONObject, String snapshotPath, Source source)
+      throws IOException {
+    if (geoJSONObject.spatialIndex == null) {
+      throw new IllegalStateException("Only an indexed GeoJSONObject can be written.");
+    }
+    StringTable strings = new StringTable(geoJSONObject);
+    Path target = Path.of(snapshotPath);
+    Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+
+    try (SnapshotWriter writer = new SnapshotWriter(new FileOutputStream(temp.toFile()))) {
+      writer.writeInt(MAGIC);
+      writer.writeInt(VERSION);
+      writer.writeLong(source.size());
+      writer.writeLong(source.lastModified());
+
+      writer.writeInt(strings.values.size());
+      for (String value : strings.values) {
+        writer.writeString(value);
+      }
+
+      writer.writeInt(strings.ref(geoJSONObject.type));
+      writer.writeInt(geoJSONObject.features.size());
+      for (GeoJSONObject.Feature feature : geoJSONObject.features) {
+        int flags =
+            (feature.geometry != null ? HAS_GEOMETRY : 0)
+                | (feature.properties != null ? HAS_PROPERTIES : 0);
+        writer.writeInt(flags);
+        writer.writeInt(strings.ref(feature.type));
+        if (feature.geometry != null) {
+          writer.writeInt(strings.ref(feature.geometry.type));
+        }
+        if (feature.properties != null) {
+          writer.writeInt(strings.ref(feature.properties.city));
+          writer.writeInt(strings.ref(feature.properties.holc_grade));
+        }
+      }
+
+      geoJSONObject.descriptionStore.writeTo(writer);
+
+      geoJSONObject.geometryStore.writeTo(writer);
+      geoJSONObject.fragments.writeTo(writer);
+      geoJSONObject.spatialIndex.writeTo(writer);
+      geoJSONObject.keywordIndex.writeTo(writer);
+
+      writer.writeString(geoJSONObject.version());
+      writer.writeBytes(geoJSONObject.fullResponseGzip());
+    }
+    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Memory-maps a snapshot file and restores the GeoJSONObject and its indexes from it, then
+   * reports how many features were read and how long it took.
+   *
+   * @param snapshotPath the path of the snapshot.
+   * @return the restored, already indexed data.
+   * @throws IOException if the file cannot be read or is not a snapshot of this version.
+   */
+  public static GeoJSONObject read(String snapshotPath) throws IOException {
+    long start = System.nanoTime();
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(Path.of(snapshotPath), StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    GeoJSONObject geoJSONObject;
+    try {
+      geoJSONObject = read(new SnapshotReader(buffer));
+    } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+      throw new IOException("Snapshot " + snapshotPath + " is truncated or corrupt.");
+    }
+
+    int count = geoJSONObject.features.size();
+    long millis = (System.nanoTime() - start) / 1_000_000;
+    System.out.println("Mapped " + count + " features from a snapshot in " + millis + " ms");
+    return geoJSONObject;
+  }
+
+  /** Restores the sections written by {@link #write}, in the same order. */
+  private static GeoJSONObject read(SnapshotReader reader) throws IOException {
+    if (reader.readInt() != MAGIC || reader.readInt() != VERSION) {
+      throw new IOException("Not a redlining snapshot of version " + VERSION + ".");
+    }
+    reader.readLong(); // The source's size and modification time, checked by isFresh.
+    reader.readLong();
+
+    String[] strings = new String[reader.readInt()];
+    for (int i = 0; i < strings.length; i++) {
+      strings[i] = reader.readString();
+    }
+
+    GeoJSONObject geoJSONObject = new GeoJSONObject();
+    geoJSONObject.type = string(strings, reader.readInt());
+    int featureCount = reader.readInt();
+    geoJSONObject.features = new ArrayList<>(featureCount);
+    for (int i = 0; i < featureCount; i++) {
+      int flags = reader.readInt();
+      GeoJSONObject.Feature feature = new GeoJSONObject.Feature();
+      feature.type = string(strings, reader.readInt());
+      if ((flags & HAS_GEOMETRY) != 0) {
+        feature.geometry = new GeoJSONObject.Geometry();
+        feature.geometry.type = string(strings, reader.readInt());
+        feature.geometry.index = i;
+      }
+      if ((flags & HAS_PROPERTIES) != 0) {
+        feature.properties = new GeoJSONObject.Properties();
+        feature.properties.city = string(strings, reader.readInt());
+        feature.properties.holc_grade = string(strings, reader.readInt());
+      }
+      geoJSONObject.features.add(feature);
+    }
+    geoJSONObject.useDescriptions(DescriptionStore.readFrom(reader));
+
+    GeometryStore store = GeometryStore.readFrom(reader);
+    geoJSONObject.geometryStore = store;
+    geoJSONObject.envelopes = store.envelopes();
+    for (GeoJSONObject.Feature feature : geoJSONObject.features) {
+      if (feature.geometry != null) {
+        feature.geometry.store = store;
+      }
+    }
+    geoJSONObject.fragments = FeatureFragments.readFrom(reader);
+    SpatialIndex spatialIndex = SpatialIndex.readFrom(reader);
+    geoJSONObject.keywordIndex = KeywordIndex.readFrom(reader, geoJSONObject.descriptions());
+    geoJSONObject.version = reader.readString();
+    geoJSONObject.fullResponseGzip = reader.readBytes();
+    geoJSONObject.buildAttributeIndexes();
+    geoJSONObject.spatialIndex = spatialIndex;
+    return geoJSONObject;
+  }
+
+  private static String string(String[] strings, int ref) {
+    return ref < 0 ? null : strings[ref];
+  }
+
+  /** Assigns every distinct string in the data a reference into one shared table. */
+  private static class StringTable {
+    private final List<String> values = new ArrayList<>();
+    private final Map<String, Integer> refs = new HashMap<>();
+
+    StringTable(GeoJSONObject geoJSONObject) {
+      this.ref(geoJSONObject.type);
+      for (GeoJSONObject.Feature feature : geoJSONObject.features) {
+        this.ref(feature.type);
+        if (feature.geometry != null) {
+          this.ref(feature.geometry.type);
+        }
+        if (feature.properties != null) {
+          this.ref(feature.properties.city);
+          this.ref(feature.properties.holc_grade);
+        }
+      }
+    }
+
+    /** Returns the string's reference, adding it to the table if needed; -1 stands for null. */
+    int ref(String value) {
+      if (value == null) {
+        return -1;
+      }
+      return this.refs.computeIfAbsent(
+          value,
+          v -> {
+            this.values.add(v);
+            return this.values.size() - 1;
+          });
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import com.squareup.moshi.JsonWriter;
+import com.squareup.moshi.ToJson;
+import edu.brown.cs.student.main.server.handlers.redlining.GeometryStore;
+import java.io.IOException;
+
+/**
+ * A Moshi adapter that writes a feature's geometry straight out of the dataset's shared
+ * GeometryStore, producing the usual GeoJSON nested coordinate arrays without ever materializing
+ * them as lists of boxed Doubles.
+ */
+public class GeometryAdapter {
+
+  /**
+   * Writes a geometry as a GeoJSON object. Polygon geometries are written with three levels of
+   * nesting and everything else as a MultiPolygon, with four. Features without a geometry are kept
+   * by the loader, and their null is written as a null.
+   *
+   * @param writer the writer to write to.
+   * @param geometry the geometry to write, possibly null.
+   * @throws IOException if the writer fails.
+   */
+  @ToJson
+  public void toJson(JsonWriter writer, GeoJSONObject.Geometry geometry) throws IOException {
+    if (geometry == null) {
+      writer.nullValue();
+      return;
+    }
+    GeometryStore store = geometry.store;
+    boolean multi = !"Polygon".equals(geometry.type);
+
+    writer.beginObject();
+    writer.name("type").value(geometry.type);
+    writer.name("coordinates");
+    if (multi) {
+      writer.beginArray();
+    }
+    for (int p = store.polygonStart(geometry.index); p < store.polygonEnd(geometry.index); p++) {
+      writer.beginArray();
+      for (int r = store.ringStart(p); r < store.ringEnd(p); r++) {
+        writer.beginArray();
+        for (int v = store.vertexStart(r); v < store.vertexEnd(r); v++) {
+          writer.beginArray().value(store.x(v)).value(store.y(v)).endArray();
+        }
+        writer.endArray();
+      }
+      writer.endArray();
+    }
+    if (multi) {
+      writer.endArray();
+    }
+    writer.endObject();
+  }
+}
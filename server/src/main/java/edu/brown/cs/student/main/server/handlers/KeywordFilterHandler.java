@@ -1,7 +1,8 @@
 package edu.brown.cs.student.main.server.handlers;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import spark.Request;
 import spark.Response;
 import spark.Route;
@@ -10,13 +11,29 @@ import spark.Route;
  * KeywordFilterHandler is called by the filtered-keywords endpoint in server, and works to retrieve
  * the filtered GeoJSON data based on the keyword and return the formatted response back to the
  * front end.
+ *
+ * <p>By default keyWord is matched as a single phrase anywhere in a description. Passing mode=all
+ * or mode=any splits keyWord on whitespace into terms that must all (AND) or may any (OR) match,
+ * and match=word matches terms against whole words instead of substrings. Matching always ignores
+ * case.
  */
 public class KeywordFilterHandler implements Route {
 
-  private GeoJSONObject geoJSONObject;
+  private final DatasetRegistry datasets;
+  private final long streamingThreshold;
 
   public KeywordFilterHandler(GeoJSONObject geoJSONObject) {
-    this.geoJSONObject = geoJSONObject;
+    this(new DatasetRegistry(geoJSONObject), GeoJSONResponses.DEFAULT_STREAMING_THRESHOLD);
+  }
+
+  /**
+   * @param datasets the registry holding the dataset to filter.
+   * @param streamingThreshold the response size, in bytes, above which the response is streamed
+   *     with chunked transfer encoding instead of being assembled first.
+   */
+  public KeywordFilterHandler(DatasetRegistry datasets, long streamingThreshold) {
+    this.datasets = datasets;
+    this.streamingThreshold = streamingThreshold;
   }
 
   /**
@@ -24,16 +41,47 @@ public class KeywordFilterHandler implements Route {
    *
    * @param request The request object providing information about the HTTP request
    * @param response The response object providing functionality for modifying the response
-   * @return The content to be set in the response
+   * @return An empty string, as the response body is written directly
+   * @throws IOException if writing the response fails
    */
   @Override
-  public Object handle(Request request, Response response) {
-    Map<String, Object> responseMap = new HashMap<>();
+  public Object handle(Request request, Response response) throws IOException {
+    GeoJSONObject geoJSONObject = datasets.current();
     String keyWord = request.queryParams("keyWord");
+    String mode = request.queryParams("mode");
+    boolean wholeWords = "word".equals(request.queryParams("match"));
+
+    List<String> terms = parseTerms(keyWord, mode);
+    int[] ids = geoJSONObject.queryKeyWords(terms, !"any".equals(mode), wholeWords);
 
-    GeoJSONObject filteredGeoJSONObject = geoJSONObject.filterKeyWords(keyWord);
-    responseMap.put("data", filteredGeoJSONObject);
+    Pagination.Page page;
+    try {
+      page =
+          Pagination.page(
+              geoJSONObject, ids, request.queryParams("limit"), request.queryParams("cursor"));
+    } catch (IllegalArgumentException e) {
+      return Utils.failure(e.getMessage());
+    }
 
-    return Utils.toMoshiJson(responseMap);
+    // Write the response from the pre-encoded features, compressed if the client accepts gzip.
+    return GeoJSONResponses.page(geoJSONObject, page, request, response, streamingThreshold);
+  }
+
+  /**
+   * Splits the keyWord parameter into query terms. Without a mode, the whole keyword is one term,
+   * matching the original phrase search; with one, it is split on whitespace.
+   *
+   * @param keyWord the keyWord parameter, possibly null.
+   * @param mode the mode parameter, possibly null.
+   * @return the terms.
+   */
+  static List<String> parseTerms(String keyWord, String mode) {
+    if (keyWord == null || keyWord.isBlank()) {
+      return List.of();
+    } else if (mode == null) {
+      return List.of(keyWord);
+    } else {
+      return Arrays.asList(keyWord.trim().split("\\s+"));
+    }
   }
 }
@@ -0,0 +1,102 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/**
+ * LocateHandler is called by the locate and locate-batch endpoints in server, and returns the
+ * properties (city, holc_grade and area description data) of the redlining areas containing a
+ * point. The locate endpoint takes one point as lat and long parameters. The locate-batch endpoint
+ * takes many points at once as a points parameter of the form lat,long;lat,long;... and answers
+ * with one result per point, in order.
+ */
+public class LocateHandler implements Route {
+  public static final int MAX_BATCH_POINTS = 1000;
+
+  private final DatasetRegistry datasets;
+  private final boolean batch;
+
+  /**
+   * @param datasets the registry holding the dataset to search.
+   * @param batch true to take a points parameter, false to take lat and long parameters.
+   */
+  public LocateHandler(DatasetRegistry datasets, boolean batch) {
+    this.datasets = datasets;
+    this.batch = batch;
+  }
+
+  /**
+   * Invoked when a request is made on this route's corresponding path
+   *
+   * @param request The request object providing information about the HTTP request
+   * @param response The response object providing functionality for modifying the response
+   * @return The content to be set in the response
+   */
+  @Override
+  public Object handle(Request request, Response response) {
+    Map<String, Object> responseMap = new HashMap<>();
+    GeoJSONObject geoJSONObject = this.datasets.current();
+    try {
+      if (this.batch) {
+        String points = request.queryParams("points");
+        if (points == null || points.isBlank()) {
+          throw new IllegalArgumentException("Missing parameter: points");
+        }
+        String[] pairs = points.split(";");
+        if (pairs.length > MAX_BATCH_POINTS) {
+          throw new IllegalArgumentException(
+              "At most " + MAX_BATCH_POINTS + " points can be located per request.");
+        }
+        List<Map<String, Object>> results = new ArrayList<>(pairs.length);
+        for (String pair : pairs) {
+          String[] coordinates = pair.split(",");
+          if (coordinates.length != 2) {
+            throw new IllegalArgumentException("Points must be given as lat,long: " + pair);
+          }
+          results.add(locate(geoJSONObject, coordinates[0], coordinates[1]));
+        }
+        responseMap.put("results", results);
+      } else {
+        String lat = request.queryParams("lat");
+        String lng = request.queryParams("long");
+        if (lat == null || lng == null) {
+          throw new IllegalArgumentException(
+              "Missing parameter: " + (lat == null ? "lat" : "long"));
+        }
+        responseMap.putAll(locate(geoJSONObject, lat, lng));
+      }
+      responseMap.put("response_type", "success");
+    } catch (IllegalArgumentException e) {
+      // Covers NumberFormatException, for coordinates that are not numbers.
+      responseMap.clear();
+      responseMap.put("response_type", "failure");
+      responseMap.put("error", e.getMessage());
+    }
+
+    return Utils.toMoshiJson(responseMap);
+  }
+
+  /** Looks up one point, returning it along with the properties of the areas containing it. */
+  private static Map<String, Object> locate(GeoJSONObject geoJSONObject, String lat, String lng) {
+    double latitude = Double.parseDouble(lat.trim());
+    double longitude = Double.parseDouble(lng.trim());
+    List<GeoJSONObject.Properties> properties = new ArrayList<>();
+    for (int id : geoJSONObject.locate(latitude, longitude)) {
+      GeoJSONObject.Feature feature = geoJSONObject.features.get(id);
+      if (feature.properties != null) {
+        properties.add(feature.properties);
+      }
+    }
+
+    Map<String, Object> result = new HashMap<>();
+    result.put("lat", latitude);
+    result.put("long", longitude);
+    result.put("features", properties);
+    return result;
+  }
+}
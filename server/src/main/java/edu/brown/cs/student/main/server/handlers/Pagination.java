@@ -0,0 +1,104 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Cuts a query's results into pages. Results are always in feature order, and a feature's position
+ * in the dataset (its ordinal) never changes while the dataset is loaded, so a page can be resumed
+ * from the ordinal of the last feature sent: the next page holds the matches after it. The cursor
+ * handed to clients is that ordinal together with the dataset version, base64url encoded, so a
+ * cursor from before a reload is rejected instead of silently skipping or repeating features.
+ */
+public class Pagination {
+  /** The largest page a client may ask for, and the size of the pages of a client that does not. */
+  public static final int MAX_LIMIT = 5000;
+
+  /**
+   * One page of results.
+   *
+   * @param ids the ids of the features on this page, in order.
+   * @param nextCursor the cursor of the next page, or null if this is the last one.
+   */
+  public record Page(int[] ids, String nextCursor) {}
+
+  /**
+   * Picks the page of results asked for by the limit and cursor parameters. Without a limit, a page
+   * holds up to {@link #MAX_LIMIT} features, so no response grows with the size of the dataset.
+   *
+   * @param geoJSONObject the dataset the ids refer to.
+   * @param ids the ids of every matching feature, sorted.
+   * @param limit the limit parameter: the most features to return, up to {@link #MAX_LIMIT}, or
+   *     null for {@link #MAX_LIMIT}.
+   * @param cursor the cursor parameter from a previous page, or null to start at the beginning.
+   * @return the page.
+   * @throws IllegalArgumentException if the limit or cursor is not valid.
+   */
+  public static Page page(GeoJSONObject geoJSONObject, int[] ids, String limit, String cursor) {
+    int start = 0;
+    if (cursor != null) {
+      int last = decodeCursor(geoJSONObject, cursor);
+      // Start after the last feature sent, whether or not it still matches.
+      start = Arrays.binarySearch(ids, last);
+      start = start >= 0 ? start + 1 : -start - 1;
+    }
+
+    int pageSize = MAX_LIMIT;
+    if (limit != null) {
+      try {
+        pageSize = Integer.parseInt(limit);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("The limit must be an integer.");
+      }
+      if (pageSize < 1 || pageSize > MAX_LIMIT) {
+        throw new IllegalArgumentException("The limit must be between 1 and " + MAX_LIMIT + ".");
+      }
+    }
+    int end = (int) Math.min(ids.length, (long) start + pageSize);
+
+    int[] pageIds = start == 0 && end == ids.length ? ids : Arrays.copyOfRange(ids, start, end);
+    String nextCursor = end < ids.length ? encodeCursor(geoJSONObject, ids[end - 1]) : null;
+    return new Page(pageIds, nextCursor);
+  }
+
+  /**
+   * Returns whether a request asks for paging.
+   *
+   * @param limit the limit parameter, possibly null.
+   * @param cursor the cursor parameter, possibly null.
+   * @return true if either is given.
+   */
+  public static boolean isPaged(String limit, String cursor) {
+    return limit != null || cursor != null;
+  }
+
+  private static String encodeCursor(GeoJSONObject geoJSONObject, int lastId) {
+    String cursor = geoJSONObject.version() + ":" + lastId;
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static int decodeCursor(GeoJSONObject geoJSONObject, String cursor) {
+    String decoded;
+    try {
+      decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("The cursor is not valid.");
+    }
+    int colon = decoded.indexOf(':');
+    if (colon < 0) {
+      throw new IllegalArgumentException("The cursor is not valid.");
+    }
+    if (!decoded.substring(0, colon).equals(geoJSONObject.version())) {
+      throw new IllegalArgumentException(
+          "The cursor is from an older version of the data; start again without it.");
+    }
+    try {
+      return Integer.parseInt(decoded.substring(colon + 1));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("The cursor is not valid.");
+    }
+  }
+}
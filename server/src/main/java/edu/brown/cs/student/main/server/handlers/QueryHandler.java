@@ -0,0 +1,116 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/**
+ * QueryHandler is called by the query endpoint in server, and returns the redlining features
+ * matching every condition given, in one round trip. Any combination of these is accepted:
+ *
+ * <ul>
+ *   <li>minLat, maxLat, minLong and maxLong (all four together), plus an optional exact, as for
+ *       filtered-geojson;
+ *   <li>keyWord, plus optional mode and match, as for filtered-keywords;
+ *   <li>holc_grade, a comma separated list of grades to accept;
+ *   <li>city, a comma separated list of cities to accept.
+ * </ul>
+ *
+ * <p>The QueryPlanner decides which index to use first. The response has the same form as
+ * filtered-geojson, and is paged by limit and cursor in the same way.
+ */
+public class QueryHandler implements Route {
+  private static final List<String> BOUNDS = List.of("minLat", "maxLat", "minLong", "maxLong");
+
+  private final DatasetRegistry datasets;
+  private final long streamingThreshold;
+
+  public QueryHandler(GeoJSONObject geoJSONObject) {
+    this(new DatasetRegistry(geoJSONObject), GeoJSONResponses.DEFAULT_STREAMING_THRESHOLD);
+  }
+
+  /**
+   * @param datasets the registry holding the dataset to query.
+   * @param streamingThreshold the response size, in bytes, above which the response is streamed
+   *     with chunked transfer encoding instead of being sent with a length.
+   */
+  public QueryHandler(DatasetRegistry datasets, long streamingThreshold) {
+    this.datasets = datasets;
+    this.streamingThreshold = streamingThreshold;
+  }
+
+  /**
+   * Invoked when a request is made on this route's corresponding path
+   *
+   * @param request The request object providing information about the HTTP request
+   * @param response The response object providing functionality for modifying the response
+   * @return An empty string once the features are written, or an error message
+   * @throws IOException if writing the response fails
+   */
+  @Override
+  public Object handle(Request request, Response response) throws IOException {
+    GeoJSONObject geoJSONObject = datasets.current();
+    QueryPlanner planner = new QueryPlanner(geoJSONObject);
+    try {
+      int boundsGiven = 0;
+      for (String param : BOUNDS) {
+        boundsGiven += request.queryParams(param) == null ? 0 : 1;
+      }
+      if (boundsGiven == BOUNDS.size()) {
+        planner.bounds(
+            Double.parseDouble(request.queryParams("minLat")),
+            Double.parseDouble(request.queryParams("maxLat")),
+            Double.parseDouble(request.queryParams("minLong")),
+            Double.parseDouble(request.queryParams("maxLong")),
+            Boolean.parseBoolean(request.queryParams("exact")));
+      } else if (boundsGiven > 0) {
+        return Utils.failure("Bounds need all of " + String.join(", ", BOUNDS) + ".");
+      }
+    } catch (NumberFormatException e) {
+      return Utils.failure("Bounds must be numbers: " + e.getMessage());
+    }
+
+    String keyWord = request.queryParams("keyWord");
+    if (keyWord != null) {
+      String mode = request.queryParams("mode");
+      planner.keyWords(
+          KeywordFilterHandler.parseTerms(keyWord, mode),
+          !"any".equals(mode),
+          "word".equals(request.queryParams("match")));
+    }
+    if (request.queryParams("holc_grade") != null) {
+      planner.grades(splitList(request.queryParams("holc_grade")));
+    }
+    if (request.queryParams("city") != null) {
+      planner.cities(splitList(request.queryParams("city")));
+    }
+
+    Pagination.Page page;
+    try {
+      page =
+          Pagination.page(
+              geoJSONObject,
+              planner.run(),
+              request.queryParams("limit"),
+              request.queryParams("cursor"));
+    } catch (IllegalArgumentException e) {
+      return Utils.failure(e.getMessage());
+    }
+
+    return GeoJSONResponses.page(geoJSONObject, page, request, response, streamingThreshold);
+  }
+
+  /** Splits a comma separated parameter, dropping empty entries. */
+  private static List<String> splitList(String param) {
+    List<String> values = new ArrayList<>();
+    for (String value : param.split(",")) {
+      if (!value.isBlank()) {
+        values.add(value);
+      }
+    }
+    return values;
+  }
+}
@@ -0,0 +1,195 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import edu.brown.cs.student.main.server.handlers.redlining.AttributeIndex;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Answers a query combining any of a bounding box, keyword terms, HOLC grades and cities, all of
+ * which a feature must match. Each condition has an index that can estimate its result size before
+ * running: the spatial index counts the leaves meeting the box, and the keyword, grade and city
+ * indexes know the lengths of their postings lists. The planner runs the most selective condition
+ * first and then works through the rest in order of their estimates. A condition whose estimate is
+ * larger than the candidates left is checked against those candidates directly, rather than read
+ * from its index; otherwise its ids are read and intersected with the candidates as bitmaps. The
+ * cost of a query therefore follows the size of its result rather than the size of the dataset.
+ */
+public class QueryPlanner {
+  private final GeoJSONObject dataset;
+  private final List<Condition> conditions = new ArrayList<>();
+
+  /**
+   * Creates a planner for a query with no conditions yet.
+   *
+   * @param dataset the dataset to query.
+   */
+  public QueryPlanner(GeoJSONObject dataset) {
+    this.dataset = dataset;
+    dataset.ensureIndexed();
+  }
+
+  /** One condition of a query, with the two ways of applying it. */
+  private interface Condition {
+    /** An upper bound on the number of features matching the condition. */
+    long estimate();
+
+    /** Reads the ids of every feature matching the condition from its index, sorted. */
+    int[] ids();
+
+    /** Keeps the sorted candidates matching the condition. */
+    int[] filter(int[] candidates);
+  }
+
+  /**
+   * Requires features to lie within the specified latitude and longitude bounds. See {@link
+   * GeoJSONObject#queryBounds}.
+   *
+   * @param minLat minimum latitude of area.
+   * @param maxLat maximum latitude of area.
+   * @param minLong minimum longitude of area.
+   * @param maxLong maximum longitude of area.
+   * @param exact whether to test the features' polygons, not just their envelopes.
+   * @return this planner.
+   */
+  public QueryPlanner bounds(
+      double minLat, double maxLat, double minLong, double maxLong, boolean exact) {
+    GeoJSONObject data = this.dataset;
+    this.conditions.add(
+        new Condition() {
+          @Override
+          public long estimate() {
+            return data.spatialIndex.estimate(minLong, minLat, maxLong, maxLat);
+          }
+
+          @Override
+          public int[] ids() {
+            return data.queryBounds(minLat, maxLat, minLong, maxLong, exact);
+          }
+
+          @Override
+          public int[] filter(int[] candidates) {
+            return data.refineBounds(candidates, minLat, maxLat, minLong, maxLong, exact);
+          }
+        });
+    return this;
+  }
+
+  /**
+   * Requires features' descriptions to match keyword terms. See {@link
+   * GeoJSONObject#queryKeyWords}.
+   *
+   * @param terms the terms to look for.
+   * @param matchAll true if every term must match (AND), false if any term may match (OR).
+   * @param wholeTokens true to match terms as whole words, false to match them as substrings.
+   * @return this planner.
+   */
+  public QueryPlanner keyWords(List<String> terms, boolean matchAll, boolean wholeTokens) {
+    GeoJSONObject data = this.dataset;
+    this.conditions.add(
+        new Condition() {
+          @Override
+          public long estimate() {
+            return data.keywordIndex.estimate(terms, matchAll, wholeTokens);
+          }
+
+          @Override
+          public int[] ids() {
+            return data.queryKeyWords(terms, matchAll, wholeTokens);
+          }
+
+          @Override
+          public int[] filter(int[] candidates) {
+            return data.keywordIndex.filter(candidates, terms, matchAll, wholeTokens);
+          }
+        });
+    return this;
+  }
+
+  /**
+   * Requires features to have one of the given HOLC grades, ignoring case.
+   *
+   * @param grades the grades to accept.
+   * @return this planner.
+   */
+  public QueryPlanner grades(List<String> grades) {
+    this.conditions.add(this.attribute(this.dataset.gradeIndex, grades));
+    return this;
+  }
+
+  /**
+   * Requires features to be in one of the given cities, ignoring case.
+   *
+   * @param cities the cities to accept.
+   * @return this planner.
+   */
+  public QueryPlanner cities(List<String> cities) {
+    this.conditions.add(this.attribute(this.dataset.cityIndex, cities));
+    return this;
+  }
+
+  private Condition attribute(AttributeIndex index, List<String> values) {
+    return new Condition() {
+      @Override
+      public long estimate() {
+        return index.count(values);
+      }
+
+      @Override
+      public int[] ids() {
+        return index.search(values);
+      }
+
+      @Override
+      public int[] filter(int[] candidates) {
+        return index.filter(candidates, values);
+      }
+    };
+  }
+
+  /**
+   * Runs the query.
+   *
+   * @return the ids of the features matching every condition, in feature order. With no conditions,
+   *     every feature.
+   */
+  public int[] run() {
+    if (this.conditions.isEmpty()) {
+      return this.dataset.allIds();
+    }
+    List<PlannedCondition> plan = new ArrayList<>();
+    for (Condition condition : this.conditions) {
+      plan.add(new PlannedCondition(condition, condition.estimate()));
+    }
+    plan.sort(Comparator.comparingLong(PlannedCondition::estimate));
+
+    int[] candidates = plan.get(0).condition().ids();
+    for (int i = 1; i < plan.size() && candidates.length > 0; i++) {
+      PlannedCondition next = plan.get(i);
+      if (candidates.length < next.estimate()) {
+        candidates = next.condition().filter(candidates);
+      } else {
+        candidates = intersect(candidates, next.condition().ids());
+      }
+    }
+    return candidates;
+  }
+
+  private record PlannedCondition(Condition condition, long estimate) {}
+
+  /** Intersects two sorted id arrays as bitmaps. */
+  private static int[] intersect(int[] a, int[] b) {
+    BitSet bits = toBitSet(a);
+    bits.and(toBitSet(b));
+    return bits.stream().toArray();
+  }
+
+  private static BitSet toBitSet(int[] ids) {
+    BitSet bits = new BitSet(ids.length == 0 ? 0 : ids[ids.length - 1] + 1);
+    for (int id : ids) {
+      bits.set(id);
+    }
+    return bits;
+  }
+}
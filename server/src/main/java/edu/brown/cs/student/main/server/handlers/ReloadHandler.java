@@ -0,0 +1,55 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import java.util.HashMap;
+import java.util.Map;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/**
+ * ReloadHandler is called by the admin/reload endpoint in server, and starts rebuilding the
+ * redlining dataset in the background. The old dataset keeps being served until the new one is
+ * ready, so the response only reports whether a reload was started.
+ */
+public class ReloadHandler implements Route {
+  private final DatasetRegistry datasets;
+
+  public ReloadHandler(DatasetRegistry datasets) {
+    this.datasets = datasets;
+  }
+
+  /**
+   * Invoked when a request is made on this route's corresponding path
+   *
+   * @param request The request object providing information about the HTTP request
+   * @param response The response object providing functionality for modifying the response
+   * @return The content to be set in the response
+   */
+  @Override
+  public Object handle(Request request, Response response) {
+    GeoJSONObject dataset = this.datasets.current();
+    if (dataset == null) {
+      // The data failed to load at startup; a reload is how it is retried.
+      return Utils.failure(
+          this.datasets.reloadAsync()
+              ? "No dataset is loaded yet; a reload was started."
+              : "No dataset is loaded.");
+    }
+
+    Map<String, Object> responseMap = new HashMap<>();
+    if (this.datasets.reloadAsync()) {
+      response.status(202); // Accepted
+      responseMap.put("response_type", "success");
+      responseMap.put("status", "reloading");
+    } else {
+      responseMap.put("response_type", "failure");
+      responseMap.put(
+          "error",
+          this.datasets.isReloading()
+              ? "A reload is already running."
+              : "This dataset cannot be reloaded.");
+    }
+    responseMap.put("version", dataset.version());
+    return Utils.toMoshiJson(responseMap);
+  }
+}
@@ -0,0 +1,90 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/**
+ * TileHandler is called by the tiles/:z/:x/:y endpoint in server, and returns one slippy map tile
+ * of the redlining data, clipped and simplified for its zoom level by the TileRenderer. Tiles are
+ * rendered the first time they are asked for and then kept in a cache bounded by size in bytes.
+ */
+public class TileHandler implements Route {
+  public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+  private final DatasetRegistry datasets;
+  private final Cache<TileKey, byte[]> tiles;
+
+  public TileHandler(GeoJSONObject geoJSONObject) {
+    this(new DatasetRegistry(geoJSONObject), DEFAULT_MAX_BYTES);
+  }
+
+  /**
+   * @param datasets the registry holding the dataset to render tiles of. Cached tiles are dropped
+   *     whenever it swaps in a new dataset.
+   * @param maxBytes the maximum total size of the cached tiles, in bytes.
+   */
+  public TileHandler(DatasetRegistry datasets, long maxBytes) {
+    this.datasets = datasets;
+    this.tiles =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((TileKey key, byte[] tile) -> tile.length)
+            .recordStats()
+            .build();
+    datasets.onSwap(dataset -> this.tiles.invalidateAll());
+  }
+
+  /**
+   * Invoked when a request is made on this route's corresponding path
+   *
+   * @param request The request object providing information about the HTTP request
+   * @param response The response object providing functionality for modifying the response
+   * @return An empty string once the tile is written, or an error message
+   * @throws IOException if writing the tile fails
+   */
+  @Override
+  public Object handle(Request request, Response response) throws IOException {
+    int z;
+    int x;
+    int y;
+    try {
+      z = Integer.parseInt(request.params(":z"));
+      x = Integer.parseInt(request.params(":x"));
+      y = Integer.parseInt(request.params(":y"));
+    } catch (NumberFormatException e) {
+      return Utils.failure("Tile coordinates must be integers.");
+    }
+    if (z < 0 || z > TileRenderer.MAX_ZOOM) {
+      return Utils.failure("Zoom must be between 0 and " + TileRenderer.MAX_ZOOM + ".");
+    }
+    if (x < 0 || y < 0 || x >= (1 << z) || y >= (1 << z)) {
+      return Utils.failure("Tile " + x + "/" + y + " does not exist at zoom " + z + ".");
+    }
+
+    // Concurrent requests for the same tile wait for a single render, which holds no lock on the
+    // rest of the cache.
+    GeoJSONObject dataset = this.datasets.current();
+    byte[] tile;
+    try {
+      tile =
+          this.tiles.get(
+              new TileKey(dataset.version(), z, x, y), () -> TileRenderer.render(dataset, z, x, y));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      return Utils.failure("Could not render tile " + z + "/" + x + "/" + y + ".");
+    }
+    return GeoJSONResponses.json(dataset, tile, request, response);
+  }
+
+  /**
+   * Identifies a tile of a particular dataset, so tiles of a reloaded dataset never mix. It holds
+   * the dataset's version rather than the dataset, so a tile cached after a swap does not keep the
+   * old dataset in memory.
+   */
+  private record TileKey(String version, int z, int x, int y) {}
+}
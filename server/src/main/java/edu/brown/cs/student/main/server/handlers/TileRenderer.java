@@ -0,0 +1,128 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import com.squareup.moshi.JsonAdapter;
+import edu.brown.cs.student.main.server.handlers.redlining.GeometryStore;
+import edu.brown.cs.student.main.server.handlers.redlining.TileGeometry;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Renders one slippy map tile of a dataset as GeoJSON. Only the features whose envelope meets the
+ * tile are visited, each of their rings is clipped to the tile (plus a few pixels of buffer, so
+ * shapes meet cleanly at tile edges) and simplified with Douglas-Peucker to a tolerance of about
+ * one pixel at the tile's zoom, and coordinates are rounded to that precision. Rings that collapse
+ * below a pixel are dropped. The payload therefore grows with the area on screen rather than with
+ * the size of the dataset.
+ *
+ * <p>The response uses the same {"data": ...} envelope as filtered-geojson. Each feature keeps only
+ * its city and holc_grade properties; the full area description data is left to the other
+ * endpoints.
+ */
+public class TileRenderer {
+  public static final int MAX_ZOOM = 22;
+
+  private static final int BUFFER_PIXELS = 4;
+
+  /**
+   * Renders a tile.
+   *
+   * @param dataset the dataset to render.
+   * @param z the zoom level, from 0 to {@link #MAX_ZOOM}.
+   * @param x the tile column, from 0 to 2^z - 1.
+   * @param y the tile row, from 0 to 2^z - 1.
+   * @return the tile as UTF-8 JSON.
+   */
+  public static byte[] render(GeoJSONObject dataset, int z, int x, int y) {
+    double[] tile = TileGeometry.tileBounds(z, x, y);
+    double pixelLong = (tile[2] - tile[0]) / TileGeometry.TILE_PIXELS;
+    double pixelLat = (tile[3] - tile[1]) / TileGeometry.TILE_PIXELS;
+    double minLong = tile[0] - BUFFER_PIXELS * pixelLong;
+    double minLat = tile[1] - BUFFER_PIXELS * pixelLat;
+    double maxLong = tile[2] + BUFFER_PIXELS * pixelLong;
+    double maxLat = tile[3] + BUFFER_PIXELS * pixelLat;
+    double tolerance = Math.min(pixelLong, pixelLat);
+    // Round to a tenth of the tolerance, so rounding never moves a vertex visibly.
+    double scale = Math.pow(10, Math.ceil(Math.log10(10 / tolerance)));
+
+    int[] ids = dataset.queryBounds(minLat, maxLat, minLong, maxLong, false);
+    GeometryStore store = dataset.geometryStore;
+    JsonAdapter<GeoJSONObject.Properties> propertiesAdapter =
+        Utils.buildMoshi().adapter(GeoJSONObject.Properties.class);
+    JsonAdapter<String> stringAdapter = Utils.buildMoshi().adapter(String.class);
+
+    StringBuilder json = new StringBuilder("{\"data\":{\"features\":[");
+    boolean firstFeature = true;
+    for (int id : ids) {
+      List<List<double[]>> polygons = new ArrayList<>();
+      for (int p = store.polygonStart(id); p < store.polygonEnd(id); p++) {
+        List<double[]> rings = new ArrayList<>();
+        for (int r = store.ringStart(p); r < store.ringEnd(p); r++) {
+          double[] ring = TileGeometry.clipRing(ring(store, r), minLong, minLat, maxLong, maxLat);
+          ring = TileGeometry.simplifyRing(ring, tolerance);
+          if (ring.length > 0) {
+            rings.add(ring);
+          } else if (r == store.ringStart(p)) {
+            break; // Without its outer ring, the polygon (and its holes) is not drawn.
+          }
+        }
+        if (!rings.isEmpty()) {
+          polygons.add(rings);
+        }
+      }
+      if (polygons.isEmpty()) {
+        continue;
+      }
+
+      json.append(firstFeature ? "" : ",").append("{\"geometry\":{\"coordinates\":[");
+      firstFeature = false;
+      for (int p = 0; p < polygons.size(); p++) {
+        json.append(p == 0 ? "[" : ",[");
+        List<double[]> rings = polygons.get(p);
+        for (int r = 0; r < rings.size(); r++) {
+          json.append(r == 0 ? "[" : ",[");
+          double[] ring = rings.get(r);
+          for (int i = 0; i < ring.length; i += 2) {
+            json.append(i == 0 ? "[" : ",[")
+                .append(Math.round(ring[i] * scale) / scale)
+                .append(',')
+                .append(Math.round(ring[i + 1] * scale) / scale)
+                .append(']');
+          }
+          json.append(']');
+        }
+        json.append(']');
+      }
+      json.append("],\"type\":\"MultiPolygon\"}");
+
+      GeoJSONObject.Feature feature = dataset.features.get(id);
+      if (feature.properties != null) {
+        GeoJSONObject.Properties properties = new GeoJSONObject.Properties();
+        properties.city = feature.properties.city;
+        properties.holc_grade = feature.properties.holc_grade;
+        json.append(",\"properties\":").append(propertiesAdapter.toJson(properties));
+      }
+      if (feature.type != null) {
+        json.append(",\"type\":").append(stringAdapter.toJson(feature.type));
+      }
+      json.append('}');
+    }
+    json.append(']');
+    if (dataset.type != null) {
+      json.append(",\"type\":").append(stringAdapter.toJson(dataset.type));
+    }
+    json.append("}}");
+    return json.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /** Copies ring r of the store into its own interleaved coordinate array. */
+  private static double[] ring(GeometryStore store, int r) {
+    int start = store.vertexStart(r);
+    double[] ring = new double[(store.vertexEnd(r) - start) * 2];
+    for (int v = start; v < store.vertexEnd(r); v++) {
+      ring[(v - start) * 2] = store.x(v);
+      ring[(v - start) * 2 + 1] = store.y(v);
+    }
+    return ring;
+  }
+}
@@ -1,30 +1,54 @@
 package edu.brown.cs.student.main.server.handlers;
 
 import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonDataException;
 import com.squareup.moshi.Moshi;
 import com.squareup.moshi.Types;
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.HashMap;
 import java.util.Map;
 
 public class Utils {
+  public static final String REDLINING_DATA_PATH = "data/geojson/fullDownload.json";
 
   /**
-   * Function that converts an object into a JSON.
+   * Function that converts an object into a JSON. Geometries are written from the shared geometry
+   * store by the GeometryAdapter.
    *
    * @param map the map to convert.
    * @return the data in JSON format.
    */
   public static String toMoshiJson(Map<String, Object> map) {
-    Moshi moshi = new Moshi.Builder().build();
+    Moshi moshi = buildMoshi();
     Type mapStringObject = Types.newParameterizedType(Map.class, String.class, Object.class);
     JsonAdapter<Map<String, Object>> adapter = moshi.adapter(mapStringObject);
 
     return adapter.toJson(map);
   }
 
+  /**
+   * Builds the JSON body of a failed request.
+   *
+   * @param error the message describing what went wrong.
+   * @return the failure response, in JSON format.
+   */
+  public static String failure(String error) {
+    Map<String, Object> responseMap = new HashMap<>();
+    responseMap.put("response_type", "failure");
+    responseMap.put("error", error);
+    return toMoshiJson(responseMap);
+  }
+
+  /**
+   * Builds the Moshi instance used to write responses, with the GeometryAdapter registered.
+   *
+   * @return a new Moshi instance.
+   */
+  public static Moshi buildMoshi() {
+    return new Moshi.Builder().add(new GeometryAdapter()).build();
+  }
+
   /**
    * Parses JSON data from a JsonReader and converts it to the specified target type.
    *
@@ -41,23 +65,46 @@ public class Utils {
     return adapter.fromJson(source);
   }
 
+  /**
+   * Loads the redlining data and its indexes. If a snapshot written from the JSON as it is now
+   * exists, it is memory-mapped instead of parsing the JSON. Otherwise the JSON is streamed feature
+   * by feature, indexed, and written out as a snapshot for the next start. The snapshot also holds
+   * the dataset's version and the gzip body of the full dataset response, so a start from it
+   * computes neither.
+   *
+   * @return the indexed redlining data, or null if it could not be read.
+   */
   public static GeoJSONObject getRedLiningTotal() {
-    String filePath = "data/geojson/fullDownload.json";
-    try {
-      // ***************** READING THE FILE *****************
-      FileReader jsonReader = new FileReader(filePath);
-      BufferedReader br = new BufferedReader(jsonReader);
-      String fileString = "";
-      String line = br.readLine();
-      while (line != null) {
-        fileString = fileString + line;
-        line = br.readLine();
+    String filePath = REDLINING_DATA_PATH;
+    String snapshotPath = "data/geojson/fullDownload.snapshot";
+
+    // ***************** MAPPING THE SNAPSHOT ***********
+    if (GeoJSONSnapshot.isFresh(snapshotPath, filePath)) {
+      try {
+        return GeoJSONSnapshot.read(snapshotPath);
+      } catch (IOException e) {
+        System.out.println("Ignoring snapshot: " + e.getMessage());
       }
-      jsonReader.close();
+    }
+
+    try {
+      // ***************** STREAMING THE FILE *************
+      // Read the file's attributes first, so a file replaced while it is parsed is not recorded as
+      // the one the snapshot holds.
+      GeoJSONSnapshot.Source source = GeoJSONSnapshot.Source.of(filePath);
+      GeoJSONObject geoJSONObject = GeoJSONLoader.load(filePath);
 
-      // ****************** CREATING THE ADAPTER **********
-      return Utils.fromJsonGeneral(fileString, GeoJSONObject.class);
-    } catch (IOException e) {
+      // ****************** INDEXING THE FEATURES *********
+      geoJSONObject.buildIndex();
+
+      // ****************** WRITING THE SNAPSHOT **********
+      try {
+        GeoJSONSnapshot.write(geoJSONObject, snapshotPath, source);
+      } catch (IOException e) {
+        System.out.println("Could not write snapshot: " + e.getMessage());
+      }
+      return geoJSONObject;
+    } catch (IOException | JsonDataException e) {
       System.out.println(e.getMessage());
       return null;
     }
@@ -4,6 +4,8 @@ import edu.brown.cs.student.main.server.handlers.census.exceptions.CountyNotFoun
 import edu.brown.cs.student.main.server.handlers.census.exceptions.DatasourceException;
 import edu.brown.cs.student.main.server.handlers.census.exceptions.StateNotFoundException;
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This interface prescribes the getBroadbandData method, which returns requested data. This
@@ -26,4 +28,47 @@ public interface BroadbandDatasource {
    */
   CensusData getBroadbandData(String state, String county)
       throws IOException, StateNotFoundException, CountyNotFoundException, DatasourceException;
+
+  /**
+   * Returns the same CensusData as {@link #getBroadbandData}, without waiting for it on the calling
+   * thread. The future completes exceptionally with the exception getBroadbandData would throw,
+   * possibly wrapped in a CompletionException. By default this calls getBroadbandData on the
+   * calling thread; datasources that can query without blocking override it.
+   *
+   * @param state is the state to be searched.
+   * @param county is the county within the state to be searched.
+   * @return a future of the Census Data for the specified state and county.
+   */
+  default CompletableFuture<CensusData> getBroadbandDataAsync(String state, String county) {
+    try {
+      return CompletableFuture.completedFuture(this.getBroadbandData(state, county));
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * Returns whether this datasource can fetch a whole state in one query with {@link
+   * #getStateBroadbandDataAsync}. Callers check it first, and look counties up one at a time
+   * instead if it cannot.
+   *
+   * @return true if whole states can be fetched; false by default.
+   */
+  default boolean supportsStateQueries() {
+    return false;
+  }
+
+  /**
+   * Returns the Census Data of every county in a state the datasource has data for, keyed by county
+   * name without the state, normalized with {@link CountyCodeIndex#normalize}. Datasources that can
+   * fetch a whole state in one query override this along with {@link #supportsStateQueries}; it is
+   * only called on those.
+   *
+   * @param state is the state to be searched.
+   * @return a future of the Census Data of the state's counties, by normalized county name.
+   * @throws UnsupportedOperationException if {@link #supportsStateQueries} is false.
+   */
+  default CompletableFuture<Map<String, CensusData>> getStateBroadbandDataAsync(String state) {
+    throw new UnsupportedOperationException("This datasource cannot fetch whole states.");
+  }
 }
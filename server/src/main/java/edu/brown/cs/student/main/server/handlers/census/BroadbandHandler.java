@@ -1,21 +1,38 @@
 package edu.brown.cs.student.main.server.handlers.census;
 
+import edu.brown.cs.student.main.server.handlers.census.exceptions.CountyNotFoundException;
 import edu.brown.cs.student.main.server.serializers.MapSerializer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import spark.Request;
 import spark.Response;
 import spark.Route;
 
 /**
- * BroadbandHandler is called by the broadband endpoint in server, and works to retrieve the
- * specified data from the Census API, and then send the formatted response back.
+ * BroadbandHandler is called by the broadband and broadband-batch endpoints in server, and works to
+ * retrieve the specified data from the Census API, and then send the formatted response back. The
+ * broadband endpoint takes one state and county. The broadband-batch endpoint takes many at once as
+ * a pairs parameter of the form state,county;state,county;... and answers with one result per pair,
+ * in order. The pairs are grouped by state and each state is fetched whole, once, so a batch costs
+ * one Census query per state rather than one per county.
  */
 public class BroadbandHandler implements Route {
+  public static final int MAX_BATCH_PAIRS = 5000;
+
+  // The longest a request waits for the datasource before answering with an error.
+  private static final long TIMEOUT_SECONDS = 20;
 
   // Instance of the interface type to handle the Census API
   private final BroadbandDatasource datasource;
+  private final boolean batch;
 
   /**
    * Constructor for BroadbandHandler.
@@ -23,7 +40,18 @@ public class BroadbandHandler implements Route {
    * @param datasource is the Census Datasource to retrieve data from.
    */
   public BroadbandHandler(BroadbandDatasource datasource) {
+    this(datasource, false);
+  }
+
+  /**
+   * Constructor for BroadbandHandler.
+   *
+   * @param datasource is the Census Datasource to retrieve data from.
+   * @param batch true to take a pairs parameter, false to take state and county parameters.
+   */
+  public BroadbandHandler(BroadbandDatasource datasource, boolean batch) {
     this.datasource = datasource;
+    this.batch = batch;
   }
 
   /**
@@ -36,6 +64,10 @@ public class BroadbandHandler implements Route {
    */
   @Override
   public Object handle(Request request, Response response) {
+    if (this.batch) {
+      return this.handleBatch(request);
+    }
+
     // Initialize the response format.
     Map<String, Object> responseData = new HashMap<>();
 
@@ -65,23 +97,141 @@ public class BroadbandHandler implements Route {
     }
 
     try {
-      // Get the data from the Datasource.
-      CensusData censusData = this.datasource.getBroadbandData(state, county);
+      // Get the data from the Datasource, waiting at most the timeout for the Census API.
+      CensusData censusData =
+          this.datasource
+              .getBroadbandDataAsync(state, county)
+              .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
 
       // Add relevant fields to the result.
       responseData.put("result", "success");
       responseData.put("data", createResponseData(censusData));
 
+    } catch (ExecutionException e) {
+      // Report the datasource's own exception rather than the future's wrapper.
+      putError(responseData, unwrap(e));
     } catch (Exception e) {
-      // Add descriptive error message to the result.
+      putError(responseData, e);
+    }
+    return new MapSerializer().serialize(responseData);
+  }
+
+  /**
+   * Answers a broadband-batch request. Every state in the batch is requested from the datasource at
+   * once, and the request waits at most the timeout for all of them together; pairs whose state has
+   * not arrived by then are reported as timed out. If the datasource cannot fetch whole states, the
+   * pairs' counties are requested one by one instead.
+   */
+  private Object handleBatch(Request request) {
+    Map<String, Object> responseData = new HashMap<>();
+    String pairs = request.queryParams("pairs");
+    if (pairs == null || pairs.isBlank()) {
+      responseData.put("result", "error");
+      responseData.put("error_type", "Missing parameter!");
+      responseData.put("error_arg", "pairs");
+      return new MapSerializer().serialize(responseData);
+    }
+    String[] split = pairs.split(";");
+    if (split.length > MAX_BATCH_PAIRS) {
       responseData.put("result", "error");
-      String[] parts = e.getClass().toString().split("\\.");
-      responseData.put("exception", parts[parts.length - 1]);
-      responseData.put("error_message", e.getMessage());
+      responseData.put("error_type", "Too many pairs!");
+      responseData.put("max_pairs", MAX_BATCH_PAIRS);
+      return new MapSerializer().serialize(responseData);
+    }
+
+    // One fetch per distinct state, started before any is waited on.
+    boolean byState = this.datasource.supportsStateQueries();
+    Map<String, CompletableFuture<Map<String, CensusData>>> states = new HashMap<>();
+    List<String[]> queries = new ArrayList<>(split.length);
+    List<CompletableFuture<CensusData>> lookups = new ArrayList<>(split.length);
+    for (String pair : split) {
+      String[] stateAndCounty = pair.split(",");
+      if (stateAndCounty.length != 2) {
+        responseData.put("result", "error");
+        responseData.put("error_type", "Malformed parameter!");
+        responseData.put("error_arg", "pairs");
+        responseData.put("error_message", "Pairs must be given as state,county: " + pair);
+        return new MapSerializer().serialize(responseData);
+      }
+      String state = stateAndCounty[0];
+      String county = stateAndCounty[1];
+      queries.add(stateAndCounty);
+      if (!byState) {
+        lookups.add(this.datasource.getBroadbandDataAsync(state, county));
+        continue;
+      }
+      CompletableFuture<Map<String, CensusData>> counties =
+          states.computeIfAbsent(
+              CountyCodeIndex.normalize(state),
+              s -> this.datasource.getStateBroadbandDataAsync(state));
+      lookups.add(lookUp(counties, county));
+    }
+
+    try {
+      CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0]))
+          .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | TimeoutException e) {
+      // Each pair's own outcome is reported below.
     }
+
+    List<Map<String, Object>> results = new ArrayList<>(lookups.size());
+    for (int i = 0; i < lookups.size(); i++) {
+      Map<String, Object> result = new LinkedHashMap<>();
+      result.put("query_state", queries.get(i)[0]);
+      result.put("query_county", queries.get(i)[1]);
+      CompletableFuture<CensusData> lookup = lookups.get(i);
+      if (!lookup.isDone()) {
+        putError(result, new TimeoutException("No answer from the datasource in time."));
+      } else if (lookup.isCompletedExceptionally()) {
+        try {
+          lookup.join();
+        } catch (CompletionException e) {
+          putError(result, unwrap(e));
+        }
+      } else {
+        result.put("result", "success");
+        result.put("data", createResponseData(lookup.join()));
+      }
+      results.add(result);
+    }
+    responseData.put("result", "success");
+    responseData.put("results", results);
     return new MapSerializer().serialize(responseData);
   }
 
+  /** Finds one county in its state's fetched counties. */
+  private static CompletableFuture<CensusData> lookUp(
+      CompletableFuture<Map<String, CensusData>> counties, String county) {
+    return counties.thenApply(
+        byName -> {
+          CensusData censusData = byName.get(CountyCodeIndex.normalize(county));
+          if (censusData == null) {
+            throw new CompletionException(new CountyNotFoundException(county));
+          }
+          return censusData;
+        });
+  }
+
+  /** Returns the exception a future failed with, rather than the future's wrappers. */
+  private static Throwable unwrap(Throwable e) {
+    Throwable cause = e;
+    while ((cause instanceof ExecutionException || cause instanceof CompletionException)
+        && cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+    return cause;
+  }
+
+  /** Helper to add a descriptive error message to the result. */
+  private static void putError(Map<String, Object> responseData, Throwable e) {
+    responseData.put("result", "error");
+    String[] parts = e.getClass().toString().split("\\.");
+    responseData.put("exception", parts[parts.length - 1]);
+    responseData.put("error_message", e.getMessage());
+  }
+
   /**
    * Helper to create a map of the census data, with the state and county codes and the broadband
    * percentage.
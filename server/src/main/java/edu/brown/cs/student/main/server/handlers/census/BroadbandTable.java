@@ -0,0 +1,74 @@
+package edu.brown.cs.student.main.server.handlers.census;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable table of the broadband data of every county the Census has it for, fetched in bulk.
+ * Counties are grouped by state, and both are keyed by name normalized with {@link
+ * CountyCodeIndex#normalize}, so a lookup is two hash lookups and never calls the Census API.
+ */
+public class BroadbandTable {
+  /** A table with no counties, used until the first bulk fetch completes. */
+  public static final BroadbandTable EMPTY = new BroadbandTable(Map.of());
+
+  private final Map<String, Map<String, CensusData>> states;
+  private final int countyCount;
+
+  /**
+   * Constructor for BroadbandTable. The maps are copied, so the table never changes.
+   *
+   * @param states the broadband data by normalized state name, then by normalized county name.
+   */
+  public BroadbandTable(Map<String, Map<String, CensusData>> states) {
+    Map<String, Map<String, CensusData>> copy = new HashMap<>();
+    int count = 0;
+    for (Map.Entry<String, Map<String, CensusData>> state : states.entrySet()) {
+      copy.put(state.getKey(), Map.copyOf(state.getValue()));
+      count += state.getValue().size();
+    }
+    this.states = Map.copyOf(copy);
+    this.countyCount = count;
+  }
+
+  /**
+   * Looks a county up.
+   *
+   * @param state is the state's name, in any case and spacing.
+   * @param county is the county's name, in any case and spacing.
+   * @return the county's broadband data, or null if the table does not have it.
+   */
+  public CensusData get(String state, String county) {
+    Map<String, CensusData> counties = this.state(state);
+    return counties == null ? null : counties.get(CountyCodeIndex.normalize(county));
+  }
+
+  /**
+   * Looks a state up.
+   *
+   * @param state is the state's name, in any case and spacing.
+   * @return the broadband data of its counties by normalized county name, or null if the table has
+   *     none of them.
+   */
+  public Map<String, CensusData> state(String state) {
+    return this.states.get(CountyCodeIndex.normalize(state));
+  }
+
+  /**
+   * Returns the number of counties in the table.
+   *
+   * @return the county count, over all states.
+   */
+  public int countyCount() {
+    return this.countyCount;
+  }
+
+  /**
+   * Returns the number of states in the table.
+   *
+   * @return the state count.
+   */
+  public int stateCount() {
+    return this.states.size();
+  }
+}
@@ -0,0 +1,67 @@
+package edu.brown.cs.student.main.server.handlers.census;
+
+import edu.brown.cs.student.main.server.handlers.census.caching.GenericCache;
+import edu.brown.cs.student.main.server.serializers.MapSerializer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/**
+ * CacheStatsHandler is called by the cache-stats endpoint in server, and reports the statistics of
+ * each census cache: its hits, misses and hit rate, its loads and how long they took on average,
+ * the entries it evicted, expired or did not admit, and its current size and estimated bytes.
+ * Operators read it to size the caches from how they are used.
+ */
+public class CacheStatsHandler implements Route {
+  private final Map<String, GenericCache<?, ?>> caches;
+
+  /**
+   * Constructor for CacheStatsHandler.
+   *
+   * @param caches the caches to report, by name.
+   */
+  public CacheStatsHandler(Map<String, GenericCache<?, ?>> caches) {
+    this.caches = caches;
+  }
+
+  /**
+   * The handle method is prescribed by the Route interface. Takes a snapshot of every cache's
+   * statistics.
+   *
+   * @param request is an unused parameter representing the request.
+   * @param response is an unused parameter representing the response to the query.
+   * @return the statistics of each cache, by name.
+   */
+  @Override
+  public Object handle(Request request, Response response) {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    for (Map.Entry<String, GenericCache<?, ?>> cache : this.caches.entrySet()) {
+      stats.put(cache.getKey(), toMap(cache.getValue().stats()));
+    }
+
+    Map<String, Object> responseData = new HashMap<>();
+    responseData.put("result", "success");
+    responseData.put("caches", stats);
+    return new MapSerializer().serialize(responseData);
+  }
+
+  /** Helper to lay one cache's statistics out as the response's fields. */
+  private static Map<String, Object> toMap(GenericCache.Stats stats) {
+    Map<String, Object> fields = new LinkedHashMap<>();
+    fields.put("hits", stats.hits());
+    fields.put("misses", stats.misses());
+    fields.put("hit_rate", stats.hitRate());
+    fields.put("loads", stats.loads());
+    fields.put("load_failures", stats.loadFailures());
+    fields.put("average_load_millis", stats.averageLoadMillis());
+    fields.put("evictions", stats.evictions());
+    fields.put("expirations", stats.expirations());
+    fields.put("rejections", stats.rejections());
+    fields.put("size", stats.size());
+    fields.put("weight_bytes", stats.weightBytes());
+    return fields;
+  }
+}
@@ -9,19 +9,31 @@ import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This class implements BroadbandDatasource for use in the BroadbandHandler, and accesses the
  * Census API directly to retrieve broadband data for the specified state and county.
  */
 public class CensusAPISource implements BroadbandDatasource {
-  private Map<String, String> stateCodes; // Will store a map of state to state code.
-  private boolean haveStateCodes; // Will track if the state codes have been retrieved yet.
+  // A map of normalized state name to state code, or null until it is first retrieved. It is never
+  // modified once published, so request threads can read it without locking.
+  private volatile Map<String, String> stateCodes;
+  private final CountyCodeIndex countyCodes; // County codes, loaded one state at a time.
 
   /** Constructor for the CensusAPISource. Initialize instance variables. */
   public CensusAPISource() {
-    this.stateCodes = new HashMap<>();
-    this.haveStateCodes = false;
+    this(new CountyCodeIndex(CountyCodeIndex.DEFAULT_TTL));
+  }
+
+  /**
+   * Constructor for the CensusAPISource with a given county code index.
+   *
+   * @param countyCodes the index county names are looked up in.
+   */
+  public CensusAPISource(CountyCodeIndex countyCodes) {
+    this.stateCodes = null;
+    this.countyCodes = countyCodes;
   }
 
   /**
@@ -42,21 +54,141 @@ public class CensusAPISource implements BroadbandDatasource {
 
     // Get state and county code, and use them to query the census.
     List<String> codes = this.getCodes(state, county);
-    List<List<String>> results =
-        CensusAPIUtilities.queryCensus(
-            "/data/2021/acs/acs1/subject/variables?"
-                + "get=NAME,S2802_C03_022E&for=county:"
-                + codes.get(1)
-                + "&in=state:"
-                + codes.get(0));
+    return this.toCensusData(CensusAPIUtilities.queryCensus(broadbandQuery(codes)));
+  }
+
+  /**
+   * Override the getBroadbandDataAsync method from the BroadbandDatasource interface. The state and
+   * county codes are almost always already loaded, so they are looked up on the calling thread; the
+   * broadband query itself runs without blocking it.
+   *
+   * @param state is the state to be searched.
+   * @param county is the county within the state to be searched.
+   * @return a future of the CensusData object of the data from the Census API.
+   */
+  @Override
+  public CompletableFuture<CensusData> getBroadbandDataAsync(String state, String county) {
+    List<String> codes;
+    try {
+      codes = this.getCodes(state, county);
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    return CensusAPIUtilities.queryCensusAsync(broadbandQuery(codes)).thenApply(this::toCensusData);
+  }
+
+  /**
+   * Override of the supportsStateQueries method from the BroadbandDatasource interface. The Census
+   * API answers a whole state in one query.
+   *
+   * @return true.
+   */
+  @Override
+  public boolean supportsStateQueries() {
+    return true;
+  }
+
+  /**
+   * Override the getStateBroadbandDataAsync method from the BroadbandDatasource interface. Fetches
+   * every county of the state with one census query, so a batch of counties costs one query per
+   * state rather than one per county.
+   *
+   * @param state is the state to be searched.
+   * @return a future of the CensusData of the state's counties, by normalized county name.
+   */
+  @Override
+  public CompletableFuture<Map<String, CensusData>> getStateBroadbandDataAsync(String state) {
+    String stateCode;
+    try {
+      stateCode = this.getStateCode(state);
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    return CensusAPIUtilities.queryCensusAsync(broadbandQuery(List.of(stateCode, "*")))
+        .thenApply(this::toCountyData);
+  }
+
+  /**
+   * Fetches the broadband data of every county in the country with one census query, for serving
+   * without querying the census per county.
+   *
+   * @return a table of the data of every county the census has it for.
+   * @throws IOException
+   * @throws DatasourceException
+   */
+  public BroadbandTable getNationalBroadbandData() throws IOException, DatasourceException {
+    List<List<String>> results = CensusAPIUtilities.queryCensus(broadbandQuery(List.of("*", "*")));
+    String time = this.getTime();
+    Map<String, Map<String, CensusData>> states = new HashMap<>();
+    // Names are "County, State", like in the county code index.
+    for (List<String> row : results.subList(Math.min(1, results.size()), results.size())) {
+      String name = row.get(0);
+      int comma = name.lastIndexOf(", ");
+      if (comma < 0) {
+        continue;
+      }
+      states
+          .computeIfAbsent(
+              CountyCodeIndex.normalize(name.substring(comma + 2)), state -> new HashMap<>())
+          .put(CountyCodeIndex.normalize(name.substring(0, comma)), toCensusData(row, time));
+    }
+    return new BroadbandTable(states);
+  }
+
+  /**
+   * Builds the census query for the broadband percentage of one county, or of every county in the
+   * state if the county code is "*", or of every county in the country if both codes are "*".
+   *
+   * @param codes the state and county codes.
+   * @return the query's path and parameters.
+   */
+  private static String broadbandQuery(List<String> codes) {
+    return "/data/2021/acs/acs1/subject/variables?"
+        + "get=NAME,S2802_C03_022E&for=county:"
+        + codes.get(1)
+        + "&in=state:"
+        + codes.get(0);
+  }
+
+  /**
+   * Construct a CensusData object with the results of a broadband query.
+   *
+   * @param results the rows of the census response, header first.
+   * @return the CensusData of the first row after the header.
+   */
+  private CensusData toCensusData(List<List<String>> results) {
+    return toCensusData(results.get(1), this.getTime());
+  }
+
+  /**
+   * Construct a CensusData object for each row of a whole-state broadband query.
+   *
+   * @param results the rows of the census response, header first.
+   * @return the CensusData of each county, by normalized county name without the state.
+   */
+  private Map<String, CensusData> toCountyData(List<List<String>> results) {
+    String time = this.getTime();
+    Map<String, CensusData> counties = new HashMap<>();
+    // Names are "County, State", like in the county code index.
+    for (List<String> row : results.subList(Math.min(1, results.size()), results.size())) {
+      String name = row.get(0);
+      int comma = name.lastIndexOf(", ");
+      counties.put(
+          CountyCodeIndex.normalize(comma < 0 ? name : name.substring(0, comma)),
+          toCensusData(row, time));
+    }
+    return Map.copyOf(counties);
+  }
 
-    // Construct a CensusData object with the results and return it.
-    List<String> data = results.get(1);
-    return new CensusData(data.get(0), data.get(1) + "%", data.get(2), data.get(3), this.getTime());
+  /** Construct a CensusData object from one row of a broadband query. */
+  private static CensusData toCensusData(List<String> row, String time) {
+    return new CensusData(row.get(0), row.get(1) + "%", row.get(2), row.get(3), time);
   }
 
   /**
-   * Helper method to retrieve the state and country codes to be queried by in the Census API.
+   * Helper method to retrieve the state and country codes to be queried by in the Census API. State
+   * and county names are matched ignoring case and extra whitespace. County codes come from the
+   * county code index, so only the first lookup in a state fetches its county list.
    *
    * @param state to find the state code of.
    * @param county to find the county code of.
@@ -69,57 +201,76 @@ public class CensusAPISource implements BroadbandDatasource {
   private List<String> getCodes(String state, String county)
       throws IOException, StateNotFoundException, CountyNotFoundException, DatasourceException {
 
-    // Check and load state codes.
-    if (!this.haveStateCodes) {
-      this.fetchAllStateCodes();
-      this.haveStateCodes = true;
-    }
+    String stateCode = this.getStateCode(state);
+
+    // Look up the county code in the index, which fetches the state's counties if needed.
+    String countyCode = this.countyCodes.countyCode(stateCode, county);
+
+    // Return a list of the county and state codes.
+    return List.of(stateCode, countyCode);
+  }
 
-    // Get State code from stateCodes instance variable.
-    if (!this.stateCodes.containsKey(state)) {
+  /**
+   * Looks up a state's code, loading the state codes first if needed.
+   *
+   * @param state to find the state code of.
+   * @return the state code.
+   * @throws IOException
+   * @throws StateNotFoundException
+   * @throws DatasourceException
+   */
+  private String getStateCode(String state)
+      throws IOException, StateNotFoundException, DatasourceException {
+    String stateCode = this.getStateCodes().get(CountyCodeIndex.normalize(state));
+    if (stateCode == null) {
       throw new StateNotFoundException(state);
     }
-    String stateCode = this.stateCodes.get(state);
-
-    // Use CensusAPIUtilities to query the census.
-    List<List<String>> counties =
-        CensusAPIUtilities.queryCensus(
-            "/data/2010/dec/sf1?get=NAME&for=county:*&in=state:" + stateCode);
-
-    // Look for the county with the corresponding name.
-    String countyCode = "";
-    for (List<String> list : counties) {
-      if (list.get(0).equals(county + ", " + state)) {
-        countyCode = list.get(2);
-      }
-    }
+    return stateCode;
+  }
 
-    // Make sure county was found.
-    if (!(countyCode.length() > 0)) {
-      throw new CountyNotFoundException(county);
+  /**
+   * Returns the state codes, fetching them with the first census query. Only one thread fetches
+   * them; threads arriving meanwhile wait for its result. If the fetch fails, the next call tries
+   * again.
+   *
+   * @return an unmodifiable map from normalized state name to state code.
+   * @throws IOException
+   * @throws DatasourceException
+   */
+  private Map<String, String> getStateCodes() throws IOException, DatasourceException {
+    Map<String, String> codes = this.stateCodes;
+    if (codes == null) {
+      synchronized (this) {
+        codes = this.stateCodes;
+        if (codes == null) {
+          codes = fetchAllStateCodes();
+          this.stateCodes = codes;
+        }
+      }
     }
-
-    // Return a list of the county and state codes.
-    return List.of(stateCode, countyCode);
+    return codes;
   }
 
   /**
-   * Private method called with the first census query. Gets the state codes for all U.S. States and
-   * stores them in a HashMap from String (name) to int (code).
+   * Gets the state codes for all U.S. States from the census, as a map from String (name) to String
+   * (code).
    *
+   * @return the state codes, keyed by normalized state name.
    * @throws IOException
    * @throws DatasourceException
    */
-  private void fetchAllStateCodes() throws IOException, DatasourceException {
+  private static Map<String, String> fetchAllStateCodes() throws IOException, DatasourceException {
     // Query the census for the state codes.
     List<List<String>> results =
         CensusAPIUtilities.queryCensus("/data/2010/dec/sf1?get=NAME&for=state:*");
 
-    // Convert the list to an instance variable hashmap and remove the header.
+    // Convert the list to a hashmap and remove the header.
+    Map<String, String> codes = new HashMap<>();
     for (List<String> list : results) {
-      this.stateCodes.put(list.get(0), list.get(1));
+      codes.put(CountyCodeIndex.normalize(list.get(0)), list.get(1));
     }
-    this.stateCodes.remove("NAME");
+    codes.remove("name");
+    return Map.copyOf(codes);
   }
 
   /**
@@ -1,22 +1,48 @@
 package edu.brown.cs.student.main.server.handlers.census;
 
 import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonDataException;
 import com.squareup.moshi.Moshi;
 import com.squareup.moshi.Types;
 import edu.brown.cs.student.main.server.handlers.census.exceptions.DatasourceException;
 import java.io.IOException;
 import java.lang.reflect.Type;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.net.URLConnection;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import okio.Buffer;
 
 /**
  * A class with static methods to assist the CensusAPISource in querying the census. Uses moshi to
  * deserialize output.
+ *
+ * <p>Every query goes through one shared HttpClient, which keeps connections to api.census.gov
+ * alive between queries and uses HTTP/2 when the server offers it, so most queries skip the TCP and
+ * TLS handshakes. Connecting and each whole query have timeouts, so a stalled Census API cannot
+ * hold a request thread forever.
  */
 public class CensusAPIUtilities {
+  /** How long to wait for a connection to the Census API. */
+  public static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+
+  /** How long to wait for a query's response, once connected. */
+  public static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(15);
+
+  private static final String CENSUS_HOST = "https://api.census.gov";
+
+  private static final HttpClient CLIENT =
+      HttpClient.newBuilder()
+          .version(HttpClient.Version.HTTP_2)
+          .connectTimeout(CONNECT_TIMEOUT)
+          .followRedirects(HttpClient.Redirect.NORMAL)
+          .build();
+
+  private static final JsonAdapter<List<List<String>>> ADAPTER = buildAdapter();
 
   /**
    * A utility method used within CensusAPISource to query the Census, given the url endpoint and
@@ -29,38 +55,66 @@ public class CensusAPIUtilities {
    */
   public static List<List<String>> queryCensus(String file)
       throws IOException, DatasourceException {
-    URL requestURL = new URL("https", "api.census.gov", file);
-    HttpURLConnection clientConnection = connect(requestURL);
-    Moshi moshi = new Moshi.Builder().build();
-
-    Type listListString = Types.newParameterizedType(List.class, List.class, String.class);
-    JsonAdapter<List<List<String>>> adapter = moshi.adapter(listListString);
+    HttpResponse<byte[]> response;
+    try {
+      response = CLIENT.send(buildRequest(file), HttpResponse.BodyHandlers.ofByteArray());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while querying the census.", e);
+    }
+    return parse(response);
+  }
 
-    List<List<String>> results =
-        adapter.fromJson(new Buffer().readFrom(clientConnection.getInputStream()));
-    clientConnection.disconnect();
+  /**
+   * Queries the Census like {@link #queryCensus}, without blocking the calling thread. The future
+   * completes on the HttpClient's threads, exceptionally with an IOException, a DatasourceException
+   * or an HttpTimeoutException (wrapped in a CompletionException) if the query fails.
+   *
+   * @param file the specific census query to be run.
+   * @return a future of the de-serialized data from the census.
+   */
+  public static CompletableFuture<List<List<String>>> queryCensusAsync(String file) {
+    return CLIENT
+        .sendAsync(buildRequest(file), HttpResponse.BodyHandlers.ofByteArray())
+        .thenApply(
+            response -> {
+              try {
+                return parse(response);
+              } catch (IOException | DatasourceException e) {
+                throw new CompletionException(e);
+              }
+            });
+  }
 
-    return results;
+  /** Builds the GET request for a census query. */
+  private static HttpRequest buildRequest(String file) {
+    return HttpRequest.newBuilder(URI.create(CENSUS_HOST + file))
+        .timeout(REQUEST_TIMEOUT)
+        .GET()
+        .build();
   }
 
   /**
-   * Private helper method to connect to client; throws IOException and DatasourceExceptions so
-   * different callers can handle differently if needed.
-   *
-   * @param requestURL the URL used to query the census.
-   * @return the established HttpURLConnection for querying the census.
-   * @throws DatasourceException
-   * @throws IOException
+   * Private helper method to check the response and deserialize its body; throws IOException and
+   * DatasourceExceptions so different callers can handle differently if needed.
    */
-  private static HttpURLConnection connect(URL requestURL) throws DatasourceException, IOException {
-    URLConnection urlConnection = requestURL.openConnection();
-    if (!(urlConnection instanceof HttpURLConnection))
-      throw new DatasourceException("unexpected: result of connection wasn't HTTP");
-    HttpURLConnection clientConnection = (HttpURLConnection) urlConnection;
-    clientConnection.connect();
-    if (clientConnection.getResponseCode() != 200)
+  private static List<List<String>> parse(HttpResponse<byte[]> response)
+      throws IOException, DatasourceException {
+    if (response.statusCode() != 200) {
       throw new DatasourceException(
-          "unexpected: API connection not success status " + clientConnection.getResponseMessage());
-    return clientConnection;
+          "unexpected: API connection not success status " + response.statusCode());
+    }
+    try {
+      return ADAPTER.fromJson(new Buffer().write(response.body()));
+    } catch (JsonDataException e) {
+      throw new DatasourceException("unexpected: malformed census response " + e.getMessage());
+    }
+  }
+
+  /** Builds the adapter once; Moshi adapters are thread-safe and costly to create. */
+  private static JsonAdapter<List<List<String>>> buildAdapter() {
+    Moshi moshi = new Moshi.Builder().build();
+    Type listListString = Types.newParameterizedType(List.class, List.class, String.class);
+    return moshi.adapter(listListString);
   }
 }
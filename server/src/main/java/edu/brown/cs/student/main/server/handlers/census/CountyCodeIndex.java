@@ -0,0 +1,101 @@
+package edu.brown.cs.student.main.server.handlers.census;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import edu.brown.cs.student.main.server.handlers.census.exceptions.CountyNotFoundException;
+import edu.brown.cs.student.main.server.handlers.census.exceptions.DatasourceException;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * An in-process index from county names to Census county codes. The first lookup in a state fetches
+ * that state's whole county list from the Census API once; every later lookup in the state is a
+ * hash lookup, until the state's list is older than the time to live and is fetched again. Names
+ * are normalized (trimmed, lowercased, with runs of whitespace collapsed), so "kings county" finds
+ * "Kings County". Concurrent first lookups in one state share one fetch.
+ */
+public class CountyCodeIndex {
+  /** County lists rarely change, so by default a state's list is kept for a day. */
+  public static final Duration DEFAULT_TTL = Duration.ofDays(1);
+
+  // State code -> normalized county name -> county code.
+  private final Cache<String, Map<String, String>> states;
+
+  /**
+   * Constructor for CountyCodeIndex.
+   *
+   * @param ttl how long a state's county list is used before it is fetched again.
+   */
+  public CountyCodeIndex(Duration ttl) {
+    this.states = CacheBuilder.newBuilder().expireAfterWrite(ttl).build();
+  }
+
+  /**
+   * Finds a county's code, fetching the state's county list first if it is not loaded.
+   *
+   * @param stateCode the Census code of the state the county is in.
+   * @param county the county's name, such as "Kings County".
+   * @return the county's Census code.
+   * @throws IOException if the county list cannot be fetched.
+   * @throws DatasourceException if the Census API answers with an error.
+   * @throws CountyNotFoundException if the state has no county of that name.
+   */
+  public String countyCode(String stateCode, String county)
+      throws IOException, DatasourceException, CountyNotFoundException {
+    Map<String, String> counties;
+    try {
+      counties = this.states.get(stateCode, () -> fetchCounties(stateCode));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      if (e.getCause() instanceof IOException cause) {
+        throw cause;
+      } else if (e.getCause() instanceof DatasourceException cause) {
+        throw cause;
+      }
+      throw new DatasourceException("Could not load counties: " + e.getCause().getMessage());
+    }
+
+    String countyCode = counties.get(normalize(county));
+    if (countyCode == null) {
+      throw new CountyNotFoundException(county);
+    }
+    return countyCode;
+  }
+
+  /** Drops every loaded county list, so the next lookup in each state fetches it again. */
+  public void invalidateAll() {
+    this.states.invalidateAll();
+  }
+
+  /**
+   * Normalizes a state or county name the way the index is keyed.
+   *
+   * @param name the name.
+   * @return the name, trimmed, lowercased and with each run of whitespace replaced by one space.
+   */
+  public static String normalize(String name) {
+    return name.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+  }
+
+  /** Fetches one state's county list, keyed by normalized county name without the state. */
+  private static Map<String, String> fetchCounties(String stateCode)
+      throws IOException, DatasourceException {
+    List<List<String>> rows =
+        CensusAPIUtilities.queryCensus(
+            "/data/2010/dec/sf1?get=NAME&for=county:*&in=state:" + stateCode);
+
+    // Rows are NAME, state, county, with a header row first; names are "County, State".
+    Map<String, String> counties = new HashMap<>();
+    for (List<String> row : rows.subList(Math.min(1, rows.size()), rows.size())) {
+      String name = row.get(0);
+      int comma = name.lastIndexOf(", ");
+      counties.put(normalize(comma < 0 ? name : name.substring(0, comma)), row.get(2));
+    }
+    return Map.copyOf(counties);
+  }
+}
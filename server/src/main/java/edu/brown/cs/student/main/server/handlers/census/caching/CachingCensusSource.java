@@ -2,19 +2,46 @@ package edu.brown.cs.student.main.server.handlers.census.caching;
 
 import edu.brown.cs.student.main.server.handlers.census.BroadbandDatasource;
 import edu.brown.cs.student.main.server.handlers.census.CensusData;
+import edu.brown.cs.student.main.server.handlers.census.CountyCodeIndex;
 import edu.brown.cs.student.main.server.handlers.census.exceptions.CountyNotFoundException;
 import edu.brown.cs.student.main.server.handlers.census.exceptions.DatasourceException;
 import edu.brown.cs.student.main.server.handlers.census.exceptions.StateNotFoundException;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * CachingCensusSource wraps a BroadbandDatasource with a GenericCache to create a more time
- * efficient search of the Census API.
+ * efficient search of the Census API. Besides single counties it caches whole states fetched for
+ * batch requests, and single county lookups are answered from a cached state too.
+ *
+ * <p>Given a CensusLog, the in-memory caches are backed by it as a second level: every result
+ * fetched is also appended to the log, and a result missing from memory is looked for in the log
+ * before the original datasource is called. Since the log persists, a restarted server answers from
+ * it without calling the Census API.
  */
 public class CachingCensusSource implements BroadbandDatasource {
+  private static final Duration TIME_TO_LIVE = Duration.ofMinutes(10);
+  // How long past its time to live an entry is still answered while it is refreshed.
+  private static final Duration STALE_GRACE = Duration.ofMinutes(1);
+  private static final long STATE_CACHE_BYTES = 4L << 20;
+
   private final BroadbandDatasource original; // The original census datasource.
   private final GenericCache<String, CensusData>
       censusCache; // A generic cache to store CensusData.
+  private final ConcurrentMap<String, CompletableFuture<CensusData>>
+      inFlight; // Asynchronous loads not yet finished, by cache key.
+  private final GenericCache<String, Map<String, CensusData>>
+      stateCache; // Whole states, by normalized state name.
+  private final ConcurrentMap<String, CompletableFuture<Map<String, CensusData>>>
+      statesInFlight; // Asynchronous state loads not yet finished, by normalized state name.
+  private final CensusLog log; // The persistent second level, or null to keep results in memory.
 
   /**
    * Constructor initializes the instance variables.
@@ -22,16 +49,55 @@ public class CachingCensusSource implements BroadbandDatasource {
    * @param original is the original BroadbandDatasource being wrapped.
    */
   public CachingCensusSource(BroadbandDatasource original) {
+    this(original, null);
+  }
+
+  /**
+   * Constructor initializes the instance variables, backing the caches with a persistent log.
+   *
+   * @param original is the original BroadbandDatasource being wrapped.
+   * @param log is the log results are persisted in, or null to keep them only in memory.
+   */
+  public CachingCensusSource(BroadbandDatasource original, CensusLog log) {
     this.original = original;
+    this.log = log;
+
+    // The cache will hold 25 items for up to 10 minutes each. Entries read after that are still
+    // answered for a grace minute while they are fetched again in the background. Counties asked
+    // for once, as most outside the bulk table are, do not push out counties asked for often.
+    this.censusCache =
+        GenericCache.<String, CensusData>builder()
+            .maximumSize(25)
+            .expireAfterWrite(TIME_TO_LIVE)
+            .refreshAhead(this::fetchCounty, STALE_GRACE)
+            .policy(GenericCache.Policy.FREQUENCY)
+            .build();
+    this.inFlight = new ConcurrentHashMap<>();
+
+    // States vary in size, so their cache is bounded by bytes; every state fits at once.
+    this.stateCache =
+        GenericCache.<String, Map<String, CensusData>>builder()
+            .maximumWeight(STATE_CACHE_BYTES, (state, counties) -> estimatedBytes(counties))
+            .expireAfterWrite(TIME_TO_LIVE)
+            .refreshAhead(this::fetchState, STALE_GRACE)
+            .build();
+    this.statesInFlight = new ConcurrentHashMap<>();
+  }
 
-    // The cache will hold 25 items for up to 10 minutes each.
-    this.censusCache = new GenericCache<>(true, 10, true, 10);
+  /**
+   * Returns the caches, by name, for reporting their statistics.
+   *
+   * @return the county cache and the state cache.
+   */
+  public Map<String, GenericCache<?, ?>> caches() {
+    return Map.of("broadband-counties", this.censusCache, "broadband-states", this.stateCache);
   }
 
   /**
    * Override of the getBroadbandData method from the BroadbandDatasource interface. This
    * implementation first checks if the data is in the cache before defaulting to the original
-   * datasource's implementation of this method if it is not.
+   * datasource's implementation of this method if it is not. Concurrent misses on the same state
+   * and county share one call to the original datasource.
    *
    * @param state is the state to be searched.
    * @param county is the county within the state to be searched.
@@ -45,12 +111,219 @@ public class CachingCensusSource implements BroadbandDatasource {
   public CensusData getBroadbandData(String state, String county)
       throws IOException, StateNotFoundException, CountyNotFoundException, DatasourceException {
 
-    CensusData censusData;
-    if ((censusData = this.censusCache.get((state + county)))
-        == null) { // Tries to get data from cache.
-      censusData = this.original.getBroadbandData(state, county); // Queries the Census API.
-      this.censusCache.put((state + county), censusData);
+    CensusData fromState = this.fromCachedState(state, county);
+    if (fromState != null) {
+      return fromState;
+    }
+    String key = key(state, county);
+    try {
+      // One read of the cache, so a miss counts once towards its statistics and admission.
+      return this.censusCache.get(key, () -> this.loadCounty(key));
+    } catch (ExecutionException e) {
+      // Rethrow the original datasource's exception as itself.
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException ioException) {
+        throw ioException;
+      } else if (cause instanceof StateNotFoundException stateNotFound) {
+        throw stateNotFound;
+      } else if (cause instanceof CountyNotFoundException countyNotFound) {
+        throw countyNotFound;
+      } else if (cause instanceof DatasourceException datasourceException) {
+        throw datasourceException;
+      }
+      throw new DatasourceException("unexpected: " + cause);
+    }
+  }
+
+  /**
+   * Override of the getBroadbandDataAsync method from the BroadbandDatasource interface. A cached
+   * value completes at once. Otherwise the original datasource is queried asynchronously, and
+   * concurrent misses on the same state and county share that one query.
+   *
+   * @param state is the state to be searched.
+   * @param county is the county within the state to be searched.
+   * @return a future of the CensusData object.
+   */
+  @Override
+  public CompletableFuture<CensusData> getBroadbandDataAsync(String state, String county) {
+    CensusData fromState = this.fromCachedState(state, county);
+    if (fromState != null) {
+      return CompletableFuture.completedFuture(fromState);
+    }
+    String key = key(state, county);
+    CensusData cached = this.cachedCounty(key);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+    return coalesce(
+        this.inFlight,
+        key,
+        () -> this.original.getBroadbandDataAsync(state, county),
+        censusData -> {
+          this.censusCache.put(key, censusData);
+          if (this.log != null) {
+            this.log.putCounty(key, censusData);
+          }
+        });
+  }
+
+  /**
+   * Override of the supportsStateQueries method from the BroadbandDatasource interface. Whole
+   * states are cached only if the original datasource can fetch them.
+   *
+   * @return whether the original datasource can fetch whole states.
+   */
+  @Override
+  public boolean supportsStateQueries() {
+    return this.original.supportsStateQueries();
+  }
+
+  /**
+   * Override of the getStateBroadbandDataAsync method from the BroadbandDatasource interface. A
+   * cached state completes at once. Otherwise the original datasource fetches the whole state, and
+   * concurrent misses on the same state share that one fetch. Single county lookups are answered
+   * from the cached state as well, so the state's counties are kept once rather than also one by
+   * one in the much smaller county cache.
+   *
+   * @param state is the state to be searched.
+   * @return a future of the CensusData of the state's counties, by normalized county name.
+   */
+  @Override
+  public CompletableFuture<Map<String, CensusData>> getStateBroadbandDataAsync(String state) {
+    String stateKey = CountyCodeIndex.normalize(state);
+    Map<String, CensusData> cached = this.cachedState(stateKey);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+    return coalesce(
+        this.statesInFlight,
+        stateKey,
+        () -> this.original.getStateBroadbandDataAsync(state),
+        counties -> {
+          this.stateCache.put(stateKey, counties);
+          if (this.log != null) {
+            this.log.putState(stateKey, counties);
+          }
+        });
+  }
+
+  /**
+   * Fetches a county from the original datasource and persists it; loads and refreshes the county
+   * cache.
+   */
+  private CensusData fetchCounty(String key) throws Exception {
+    // Keys are "state,county", and normalized state names have no commas.
+    int comma = key.indexOf(',');
+    CensusData censusData =
+        this.original.getBroadbandData(key.substring(0, comma), key.substring(comma + 1));
+    if (this.log != null) {
+      this.log.putCounty(key, censusData);
     }
     return censusData;
   }
+
+  /** Loads a county missing from memory, from the log if it has it and else by fetching it. */
+  private CensusData loadCounty(String key) throws Exception {
+    CensusData logged = this.log == null ? null : this.log.county(key);
+    return logged != null ? logged : this.fetchCounty(key);
+  }
+
+  /** Fetches a whole state from the original datasource and persists it; refreshes the states. */
+  private Map<String, CensusData> fetchState(String stateKey) throws Exception {
+    Map<String, CensusData> counties;
+    try {
+      counties = this.original.getStateBroadbandDataAsync(stateKey).get();
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception cause ? cause : e;
+    }
+    if (this.log != null) {
+      this.log.putState(stateKey, counties);
+    }
+    return counties;
+  }
+
+  /** Estimates the bytes of a state's counties: the map's entries, their keys and their data. */
+  private static long estimatedBytes(Map<String, CensusData> counties) {
+    long bytes = 64;
+    for (Map.Entry<String, CensusData> county : counties.entrySet()) {
+      CensusData censusData = county.getValue();
+      bytes += 64 + estimatedBytes(county.getKey()); // The map entry and the CensusData object.
+      bytes += estimatedBytes(censusData.name()) + estimatedBytes(censusData.broadband());
+      bytes += estimatedBytes(censusData.state()) + estimatedBytes(censusData.county());
+      bytes += estimatedBytes(censusData.date_time());
+    }
+    return bytes;
+  }
+
+  /** Estimates the bytes of a mostly ASCII string, with its header and array. */
+  private static long estimatedBytes(String value) {
+    return value == null ? 0 : 40 + value.length();
+  }
+
+  /** Looks a county up in its state, if the whole state is cached. */
+  private CensusData fromCachedState(String state, String county) {
+    Map<String, CensusData> counties = this.cachedState(CountyCodeIndex.normalize(state));
+    return counties == null ? null : counties.get(CountyCodeIndex.normalize(county));
+  }
+
+  /** Finds a county in memory, or else in the log, keeping what the log had in memory again. */
+  private CensusData cachedCounty(String key) {
+    CensusData censusData = this.censusCache.get(key);
+    if (censusData == null && this.log != null) {
+      censusData = this.log.county(key);
+      if (censusData != null) {
+        this.censusCache.put(key, censusData);
+      }
+    }
+    return censusData;
+  }
+
+  /** Finds a whole state in memory, or else in the log, like {@link #cachedCounty}. */
+  private Map<String, CensusData> cachedState(String stateKey) {
+    Map<String, CensusData> counties = this.stateCache.get(stateKey);
+    if (counties == null && this.log != null) {
+      counties = this.log.state(stateKey);
+      if (counties != null) {
+        this.stateCache.put(stateKey, counties);
+      }
+    }
+    return counties;
+  }
+
+  /**
+   * Starts a load unless one for the same key is already running, in which case its future is
+   * returned instead. A successful value is stored before the future completes, so a request
+   * arriving after completion finds it in the cache.
+   */
+  private static <T> CompletableFuture<T> coalesce(
+      ConcurrentMap<String, CompletableFuture<T>> inFlight,
+      String key,
+      Supplier<CompletableFuture<T>> loader,
+      Consumer<T> store) {
+    CompletableFuture<T> load = new CompletableFuture<>();
+    CompletableFuture<T> running = inFlight.putIfAbsent(key, load);
+    if (running != null) {
+      return running;
+    }
+    loader
+        .get()
+        .whenComplete(
+            (value, error) -> {
+              if (error == null) {
+                store.accept(value);
+              }
+              inFlight.remove(key, load);
+              if (error == null) {
+                load.complete(value);
+              } else {
+                load.completeExceptionally(error);
+              }
+            });
+    return load;
+  }
+
+  /** Normalized, so differently written names for one county share an entry. */
+  private static String key(String state, String county) {
+    return CountyCodeIndex.normalize(state) + "," + CountyCodeIndex.normalize(county);
+  }
 }
@@ -0,0 +1,396 @@
+package edu.brown.cs.student.main.server.handlers.census.caching;
+
+import edu.brown.cs.student.main.server.handlers.census.CensusData;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent second-level cache of Census results, kept in an append-only log file so that they
+ * survive restarts. Each fetched county, or whole state, is appended to the log as one record
+ * carrying the time it was written and its time to live, and the log is read back when the server
+ * starts, so a warm restart answers broadband requests without calling the Census API.
+ *
+ * <p>The file holds a magic number and format version, then records. Each record is its length, its
+ * bytes and their CRC32, so a record torn by a crash mid-write is recognized and cut off when the
+ * log is next opened. A later record for a key replaces an earlier one. Replaced and expired
+ * records are dropped by compaction, which runs in the background and rewrites the live records to
+ * a new file that is then moved over the log.
+ *
+ * <p>Every record read is also kept in memory, so lookups never touch the disk. Census results are
+ * small: a record per county in the country is well under a megabyte.
+ */
+public class CensusLog implements Closeable {
+  /** Census estimates are published yearly, so by default a result is kept for a day. */
+  public static final Duration DEFAULT_TTL = Duration.ofDays(1);
+
+  /** How often, by default, the log is checked and compacted if it has enough dead records. */
+  public static final Duration DEFAULT_COMPACTION_INTERVAL = Duration.ofMinutes(10);
+
+  private static final int MAGIC = 0x43454E53; // "CENS"
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 8;
+  private static final int MAX_RECORD_BYTES = 1 << 20; // Far above the largest state's record.
+
+  private static final byte COUNTY = 1;
+  private static final byte STATE = 2;
+
+  private final Path file;
+  private final long ttlMillis;
+  private final Map<String, Entry<CensusData>> counties; // County records, by cache key.
+  private final Map<String, Entry<Map<String, CensusData>>> states; // State records, by state.
+  private final ScheduledExecutorService compactor;
+
+  private DataOutputStream out; // Appends to the log; guarded by this.
+  private long records; // Records in the file, live or not; guarded by this.
+
+  /** A record's value, with the times it was written and expires, in epoch milliseconds. */
+  private record Entry<T>(T value, long writtenAt, long expiresAt) {
+    boolean isExpired(long now) {
+      return now >= this.expiresAt;
+    }
+  }
+
+  /**
+   * Opens the log at the given path with the default time to live and compaction interval.
+   *
+   * @param file the log file, created with its directories if missing.
+   * @throws IOException if the log cannot be read or created.
+   */
+  public CensusLog(Path file) throws IOException {
+    this(file, DEFAULT_TTL, DEFAULT_COMPACTION_INTERVAL);
+  }
+
+  /**
+   * Opens the log, reading every unexpired record in it, and starts compacting it in the
+   * background.
+   *
+   * @param file the log file, created with its directories if missing.
+   * @param ttl how long a result written from now on is used for.
+   * @param compactionInterval how often the log is checked for compaction.
+   * @throws IOException if the log cannot be read or created.
+   */
+  public CensusLog(Path file, Duration ttl, Duration compactionInterval) throws IOException {
+    this.file = file;
+    this.ttlMillis = ttl.toMillis();
+    this.counties = new ConcurrentHashMap<>();
+    this.states = new ConcurrentHashMap<>();
+    if (file.getParent() != null) {
+      Files.createDirectories(file.getParent());
+    }
+    this.load();
+    this.out = openForAppend(file);
+
+    this.compactor =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "census-log-compactor");
+              thread.setDaemon(true);
+              return thread;
+            });
+    long interval = compactionInterval.toMillis();
+    this.compactor.scheduleWithFixedDelay(
+        this::compactIfWorthIt, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns a county's result, if the log has one that has not expired.
+   *
+   * @param key the county's cache key.
+   * @return the result, or null.
+   */
+  public CensusData county(String key) {
+    return live(this.counties.get(key));
+  }
+
+  /**
+   * Returns a whole state's results, if the log has them and they have not expired.
+   *
+   * @param state the state's normalized name.
+   * @return the results by normalized county name, or null.
+   */
+  public Map<String, CensusData> state(String state) {
+    return live(this.states.get(state));
+  }
+
+  /**
+   * Appends a county's result to the log. The log is only a cache, so if the write fails the result
+   * is still kept in memory and the failure is reported without being thrown.
+   *
+   * @param key the county's cache key.
+   * @param censusData the result.
+   */
+  public synchronized void putCounty(String key, CensusData censusData) {
+    Entry<CensusData> entry = this.newEntry(censusData);
+    this.counties.put(key, entry);
+    this.append(COUNTY, key, entry);
+  }
+
+  /**
+   * Appends a whole state's results to the log, like {@link #putCounty}.
+   *
+   * @param state the state's normalized name.
+   * @param counties the results by normalized county name.
+   */
+  public synchronized void putState(String state, Map<String, CensusData> counties) {
+    Entry<Map<String, CensusData>> entry = this.newEntry(counties);
+    this.states.put(state, entry);
+    this.append(STATE, state, entry);
+  }
+
+  /**
+   * Rewrites the log with only its live records: the newest, unexpired one for each key. Appends
+   * wait until the new log is in place.
+   *
+   * @throws IOException if the new log cannot be written; the old one is then kept.
+   */
+  public synchronized void compact() throws IOException {
+    long now = System.currentTimeMillis();
+    this.counties.values().removeIf(entry -> entry.isExpired(now));
+    this.states.values().removeIf(entry -> entry.isExpired(now));
+
+    Path temp = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+    try (DataOutputStream compacted =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp.toFile())))) {
+      compacted.writeInt(MAGIC);
+      compacted.writeInt(VERSION);
+      for (Map.Entry<String, Entry<CensusData>> county : this.counties.entrySet()) {
+        writeRecord(compacted, COUNTY, county.getKey(), county.getValue());
+      }
+      for (Map.Entry<String, Entry<Map<String, CensusData>>> state : this.states.entrySet()) {
+        writeRecord(compacted, STATE, state.getKey(), state.getValue());
+      }
+    }
+    Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING);
+    this.out.close();
+    this.out = openForAppend(this.file);
+    this.records = this.counties.size() + this.states.size();
+  }
+
+  /** Stops compacting and closes the log file. */
+  @Override
+  public synchronized void close() throws IOException {
+    this.compactor.shutdownNow();
+    this.out.close();
+  }
+
+  /** Compacts once at least half of the records in the file are replaced or expired. */
+  private synchronized void compactIfWorthIt() {
+    long now = System.currentTimeMillis();
+    long live =
+        this.counties.values().stream().filter(entry -> !entry.isExpired(now)).count()
+            + this.states.values().stream().filter(entry -> !entry.isExpired(now)).count();
+    if (this.records - live < Math.max(1, live)) {
+      return;
+    }
+    try {
+      this.compact();
+    } catch (IOException e) {
+      System.out.println("Could not compact the census log: " + e.getMessage());
+    }
+  }
+
+  private <T> Entry<T> newEntry(T value) {
+    long now = System.currentTimeMillis();
+    return new Entry<>(value, now, now + this.ttlMillis);
+  }
+
+  private static <T> T live(Entry<T> entry) {
+    return entry == null || entry.isExpired(System.currentTimeMillis()) ? null : entry.value();
+  }
+
+  /** Appends one record and flushes it to the file; called holding the lock. */
+  private void append(byte kind, String key, Entry<?> entry) {
+    try {
+      writeRecord(this.out, kind, key, entry);
+      this.out.flush();
+      this.records++;
+    } catch (IOException e) {
+      System.out.println("Could not write to the census log: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Reads every record of the log into memory, skipping expired ones. A log of another format is
+   * started over, and a torn record at the end is cut off.
+   */
+  private void load() throws IOException {
+    if (!Files.isRegularFile(this.file) || Files.size(this.file) < HEADER_BYTES) {
+      writeHeader(this.file);
+      return;
+    }
+    long now = System.currentTimeMillis();
+    long goodBytes = HEADER_BYTES;
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(this.file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        System.out.println("Starting a new census log over one of another format.");
+        writeHeader(this.file);
+        return;
+      }
+      while (true) {
+        byte[] record;
+        try {
+          record = readRecord(in);
+        } catch (EOFException e) {
+          break;
+        }
+        if (record == null) {
+          System.out.println("Cutting a torn record off the end of the census log.");
+          break;
+        }
+        goodBytes += Integer.BYTES + record.length + Long.BYTES;
+        this.records++;
+        this.replay(record, now);
+      }
+    }
+    if (goodBytes < Files.size(this.file)) {
+      try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.WRITE)) {
+        channel.truncate(goodBytes);
+      }
+    }
+    System.out.println(
+        "Read "
+            + this.counties.size()
+            + " counties and "
+            + this.states.size()
+            + " states from the census log");
+  }
+
+  /** Puts one record's entry in memory, or drops the key's older entry if the record expired. */
+  private void replay(byte[] record, long now) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+    byte kind = in.readByte();
+    String key = in.readUTF();
+    long writtenAt = in.readLong();
+    long expiresAt = in.readLong();
+    boolean expired = now >= expiresAt;
+    if (kind == COUNTY) {
+      Entry<CensusData> entry = new Entry<>(readCensusData(in), writtenAt, expiresAt);
+      if (expired) {
+        this.counties.remove(key);
+      } else {
+        this.counties.put(key, entry);
+      }
+    } else if (kind == STATE) {
+      int size = in.readInt();
+      Map<String, CensusData> counties = new HashMap<>();
+      for (int i = 0; i < size; i++) {
+        counties.put(in.readUTF(), readCensusData(in));
+      }
+      if (expired) {
+        this.states.remove(key);
+      } else {
+        this.states.put(key, new Entry<>(Map.copyOf(counties), writtenAt, expiresAt));
+      }
+    }
+  }
+
+  /**
+   * Reads one record's bytes, or returns null if the record is torn: cut short, or not matching its
+   * checksum.
+   *
+   * @throws EOFException if the log ends cleanly before the record.
+   */
+  private static byte[] readRecord(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    try {
+      if (length < 0 || length > MAX_RECORD_BYTES) {
+        return null;
+      }
+      byte[] record = new byte[length];
+      in.readFully(record);
+      CRC32 crc = new CRC32();
+      crc.update(record);
+      return in.readLong() == crc.getValue() ? record : null;
+    } catch (EOFException e) {
+      return null;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void writeRecord(DataOutputStream out, byte kind, String key, Entry<?> entry)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream record = new DataOutputStream(bytes);
+    record.writeByte(kind);
+    record.writeUTF(key);
+    record.writeLong(entry.writtenAt());
+    record.writeLong(entry.expiresAt());
+    if (kind == COUNTY) {
+      writeCensusData(record, (CensusData) entry.value());
+    } else {
+      Map<String, CensusData> counties = (Map<String, CensusData>) entry.value();
+      record.writeInt(counties.size());
+      for (Map.Entry<String, CensusData> county : counties.entrySet()) {
+        record.writeUTF(county.getKey());
+        writeCensusData(record, county.getValue());
+      }
+    }
+
+    CRC32 crc = new CRC32();
+    crc.update(bytes.toByteArray());
+    out.writeInt(bytes.size());
+    bytes.writeTo(out);
+    out.writeLong(crc.getValue());
+  }
+
+  private static void writeCensusData(DataOutputStream out, CensusData censusData)
+      throws IOException {
+    writeNullable(out, censusData.name());
+    writeNullable(out, censusData.broadband());
+    writeNullable(out, censusData.state());
+    writeNullable(out, censusData.county());
+    writeNullable(out, censusData.date_time());
+  }
+
+  private static CensusData readCensusData(DataInputStream in) throws IOException {
+    return new CensusData(
+        readNullable(in), readNullable(in), readNullable(in), readNullable(in), readNullable(in));
+  }
+
+  private static void writeNullable(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readNullable(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeHeader(Path file) throws IOException {
+    try (DataOutputStream header = new DataOutputStream(Files.newOutputStream(file))) {
+      header.writeInt(MAGIC);
+      header.writeInt(VERSION);
+    }
+  }
+
+  private static DataOutputStream openForAppend(Path file) throws IOException {
+    OutputStream append =
+        Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    return new DataOutputStream(new BufferedOutputStream(append));
+  }
+}
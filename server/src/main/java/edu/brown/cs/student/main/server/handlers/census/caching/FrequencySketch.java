@@ -0,0 +1,79 @@
+package edu.brown.cs.student.main.server.handlers.census.caching;
+
+/**
+ * A count-min sketch estimating how often each key was requested recently, in a fixed amount of
+ * memory however many keys there are. Each key increments one small saturating counter in each of
+ * four rows, and its estimate is the least of them, so collisions can only overestimate. After a
+ * sample of increments every counter is halved, so keys that were popular long ago fade and the
+ * estimate follows what is requested now.
+ */
+class FrequencySketch {
+  private static final int ROWS = 4;
+  private static final int MAX_COUNT = 15;
+  private static final int[] SEEDS = {0x97CB3127, 0x0C9BE8C5, 0x5B2E37DB, 0x3D5A7F29};
+
+  private final byte[][] counters;
+  private final int mask;
+  private final int sampleSize;
+  private int increments;
+
+  /**
+   * @param expectedKeys about how many keys are worth telling apart, such as the cache's size.
+   */
+  FrequencySketch(long expectedKeys) {
+    // Four counters per key, but never so few that one-off keys collide into looking frequent,
+    // rounded up to a power of two so an index is a mask.
+    int target = (int) Math.max(1024, Math.min(1 << 20, expectedKeys * 4));
+    int width = Integer.highestOneBit(target);
+    if (width < target) {
+      width <<= 1;
+    }
+    this.counters = new byte[ROWS][width];
+    this.mask = width - 1;
+    this.sampleSize = width * 10;
+  }
+
+  /** Records one request for a key. */
+  synchronized void increment(Object key) {
+    int hash = spread(key.hashCode());
+    for (int row = 0; row < ROWS; row++) {
+      int index = this.index(hash, row);
+      if (this.counters[row][index] < MAX_COUNT) {
+        this.counters[row][index]++;
+      }
+    }
+    if (++this.increments >= this.sampleSize) {
+      this.age();
+    }
+  }
+
+  /** Returns about how many times a key was requested recently. */
+  synchronized int frequency(Object key) {
+    int hash = spread(key.hashCode());
+    int frequency = MAX_COUNT;
+    for (int row = 0; row < ROWS; row++) {
+      frequency = Math.min(frequency, this.counters[row][this.index(hash, row)]);
+    }
+    return frequency;
+  }
+
+  /** Halves every counter. */
+  private void age() {
+    for (byte[] row : this.counters) {
+      for (int i = 0; i < row.length; i++) {
+        row[i] >>= 1;
+      }
+    }
+    this.increments /= 2;
+  }
+
+  private int index(int hash, int row) {
+    return spread(hash * SEEDS[row]) & this.mask;
+  }
+
+  private static int spread(int hash) {
+    hash ^= hash >>> 16;
+    hash *= 0x45D9F3B;
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -2,17 +2,150 @@ package edu.brown.cs.student.main.server.handlers.census.caching;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A very generic cache implementation which can be specified in terms of a maximum time for an item
  * in the cache, and a maximum number of elements to be held in the cache at one time.
  *
+ * <p>A cache is configured with a {@link Builder}. It is bounded either by entry count or by the
+ * estimated bytes of its entries. Entries expire a fixed time after they were written or after they
+ * were last read. A full cache evicts the least recently used entry, and under the frequency policy
+ * it also turns away new keys that were not requested recently (see {@link Policy#FREQUENCY}).
+ * Every cache counts its hits, misses, loads, evictions and rejections, read with {@link #stats()},
+ * so its bounds can be sized from how it is actually used.
+ *
+ * <p>A cache built with a loader refreshes ahead instead: an entry older than its time to live is
+ * still returned, but the read also starts reloading it in the background, and the reloaded value
+ * replaces it once ready. A stale entry expires only if no reload replaces it within a further
+ * grace window, so an entry read often never makes a caller wait for its reload. Reloads run on a
+ * small bounded executor; if it is full, the reload is skipped and the next read tries again.
+ *
  * @param <K> is the type of the key for the cache object.
  * @param <V> is the type of the value in the cache object.
  */
 public class GenericCache<K, V> {
+  /** Reloads entries for refreshing caches not given another executor. */
+  public static final Executor REFRESH_EXECUTOR =
+      new ThreadPoolExecutor(
+          2,
+          2,
+          0,
+          TimeUnit.SECONDS,
+          new ArrayBlockingQueue<>(100),
+          runnable -> {
+            Thread thread = new Thread(runnable, "cache-refresh");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  // Under the frequency policy, a full cache admits a new key once it was requested this often.
+  private static final int ADMISSION_FREQUENCY = 2;
+
   private final Cache<K, V> cache; // An instance of a Guava cache.
+  private final long maximumSize; // The size cap, or -1.
+  private final long maximumWeight; // The weight cap in bytes, or -1.
+  private final Weigher<? super K, ? super V> weigher; // Weighs entries, or null.
+  private final FrequencySketch sketch; // Request counts under the frequency policy, or null.
+  private final ConcurrentMap<K, CompletableFuture<V>>
+      inFlight; // Unfinished loads under the frequency policy, by key.
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder expirations = new LongAdder();
+  private final LongAdder rejections = new LongAdder();
+  private final LongAdder weight = new LongAdder(); // Total weight of the entries, if weighed.
+  private final LongAdder unadmittedLoads = new LongAdder(); // Loads run outside the cache.
+  private final LongAdder unadmittedLoadNanos = new LongAdder();
+
+  /** How a full cache chooses which entries to keep. */
+  public enum Policy {
+    /** Every new entry is admitted, and the least recently used entry is evicted for it. */
+    LRU,
+    /**
+     * Entries are evicted least recently used first, but a full cache only admits a new key once it
+     * has been requested at least twice recently, as estimated by a small count-min sketch. A scan
+     * of keys requested once cannot push out entries requested over and over. A value turned away
+     * is still returned to its caller, just not kept.
+     */
+    FREQUENCY
+  }
+
+  /**
+   * Loads the value of a key, for a cache that refreshes ahead.
+   *
+   * @param <K> is the type of the key.
+   * @param <V> is the type of the value.
+   */
+  @FunctionalInterface
+  public interface Loader<K, V> {
+    V load(K key) throws Exception;
+  }
+
+  /**
+   * Estimates how many bytes an entry takes up, for a cache bounded by weight.
+   *
+   * @param <K> is the type of the key.
+   * @param <V> is the type of the value.
+   */
+  @FunctionalInterface
+  public interface Weigher<K, V> {
+    long bytes(K key, V value);
+  }
+
+  /**
+   * A snapshot of a cache's statistics since it was built.
+   *
+   * @param hits reads that found their key.
+   * @param misses reads that did not.
+   * @param loads values loaded, including background refreshes.
+   * @param loadFailures loads that threw.
+   * @param averageLoadMillis the mean time a load took.
+   * @param evictions entries evicted to stay within the size or weight cap.
+   * @param expirations entries dropped for being too old.
+   * @param rejections new entries the frequency policy did not admit.
+   * @param size the number of entries now.
+   * @param weightBytes the estimated bytes of the entries now, if the cache weighs them, else 0.
+   */
+  public record Stats(
+      long hits,
+      long misses,
+      long loads,
+      long loadFailures,
+      double averageLoadMillis,
+      long evictions,
+      long expirations,
+      long rejections,
+      long size,
+      long weightBytes) {
+
+    /**
+     * Returns the share of reads that found their key.
+     *
+     * @return the hit rate, or 1 if nothing was read yet.
+     */
+    public double hitRate() {
+      long reads = this.hits + this.misses;
+      return reads == 0 ? 1.0 : (double) this.hits / reads;
+    }
+  }
 
   /**
    * The constructor initializes the cache with the specified parameters for max size and or max
@@ -21,41 +154,399 @@ public class GenericCache<K, V> {
    * @param sizeCap is a boolean for if the size is capped.
    * @param size is the size cap.
    * @param timeCap is a boolean for if the time is capped.
-   * @param seconds is the time cap in number of seconds.
+   * @param seconds is the time cap in number of seconds, counted from each item's last access.
    */
   public GenericCache(boolean sizeCap, int size, boolean timeCap, int seconds) {
-    if (sizeCap && timeCap) { // Size and time both specified.
-      this.cache =
-          CacheBuilder.newBuilder()
-              .maximumSize(size)
-              .expireAfterAccess(seconds, TimeUnit.SECONDS)
-              .build();
-    } else if (sizeCap) { // Only size specified.
-      this.cache = CacheBuilder.newBuilder().maximumSize(size).build();
-    } else if (timeCap) { // Only time specified.
-      this.cache = CacheBuilder.newBuilder().expireAfterAccess(seconds, TimeUnit.SECONDS).build();
-    } else { // Neither specified.
-      this.cache = CacheBuilder.newBuilder().build();
+    this(legacyBuilder(sizeCap, size, timeCap, seconds));
+  }
+
+  /** Builds the cache a builder describes. */
+  private GenericCache(Builder<K, V> builder) {
+    this.maximumSize = builder.maximumSize;
+    this.maximumWeight = builder.maximumWeight;
+    this.weigher = builder.weigher;
+    this.sketch =
+        builder.policy == Policy.FREQUENCY
+            ? new FrequencySketch(this.maximumSize >= 0 ? this.maximumSize : 1024)
+            : null;
+    this.inFlight = new ConcurrentHashMap<>();
+
+    CacheBuilder<K, V> guava =
+        CacheBuilder.newBuilder().recordStats().removalListener(this::onRemoval);
+    if (this.maximumSize >= 0 || this.maximumWeight >= 0) {
+      // Guava splits a cap evenly between its segments; with one segment, the cap and the LRU
+      // order hold for the whole cache. Reads take no lock either way.
+      guava.concurrencyLevel(1);
     }
+    if (this.maximumSize >= 0) {
+      guava.maximumSize(this.maximumSize);
+    } else if (this.maximumWeight >= 0) {
+      guava.maximumWeight(this.maximumWeight).weigher(this::weigh);
+    }
+    if (builder.expireAfterAccess != null) {
+      guava.expireAfterAccess(builder.expireAfterAccess);
+    }
+
+    if (builder.refreshLoader == null) {
+      if (builder.expireAfterWrite != null) {
+        guava.expireAfterWrite(builder.expireAfterWrite);
+      }
+      this.cache = guava.build();
+      return;
+    }
+
+    // Fresh for the time to live, then stale but served for the grace window while reloading.
+    Loader<K, V> loader = builder.refreshLoader;
+    CacheLoader<K, V> cacheLoader =
+        new CacheLoader<>() {
+          @Override
+          public V load(K key) throws Exception {
+            return loader.load(key);
+          }
+        };
+    this.cache =
+        guava
+            .refreshAfterWrite(builder.expireAfterWrite)
+            .expireAfterWrite(builder.expireAfterWrite.plus(builder.refreshGrace))
+            .build(CacheLoader.asyncReloading(cacheLoader, builder.refreshExecutor));
+  }
+
+  /**
+   * Starts describing a cache. Without any other setting it is unbounded, never expires and uses
+   * the LRU policy.
+   *
+   * @param <K> is the type of the key for the cache object.
+   * @param <V> is the type of the value in the cache object.
+   * @return a new builder.
+   */
+  public static <K, V> Builder<K, V> builder() {
+    return new Builder<>();
   }
 
   /**
-   * Add a new value to the cache. Both of the generic type specified in the constructor.
+   * Add a new value to the cache. Both of the generic type specified in the constructor. Under the
+   * frequency policy, a full cache may turn the value away.
    *
    * @param key is the key to access the value.
    * @param value is the value.
    */
   public void put(K key, V value) {
-    cache.put(key, value);
+    if (this.admits(key, value)) {
+      cache.put(key, value);
+    }
   }
 
   /**
-   * Retrieves the value associated with the given key.
+   * Retrieves the value associated with the given key. In a cache that refreshes ahead, a stale
+   * value is returned and starts reloading.
    *
    * @param key is the key to look for.
    * @return the value if present, null if not.
    */
   public V get(K key) {
-    return cache.getIfPresent(key);
+    if (this.sketch != null) {
+      this.sketch.increment(key);
+    }
+    // Reading through the map view records neither a hit nor a miss in Guava's statistics, so
+    // each read is counted once, here. It still starts a due refresh in a loading cache.
+    V value = cache.asMap().get(key);
+    if (value == null) {
+      this.misses.increment();
+      return null;
+    }
+    this.hits.increment();
+    return value;
+  }
+
+  /**
+   * Retrieves the value associated with the given key, loading it first if it is missing. When
+   * several threads miss on the same key at once, only one of them runs the loader and the others
+   * wait for its value, so a burst of requests for one key makes one upstream call. Under the
+   * frequency policy, a full cache loads a key not yet admitted outside of it and returns it
+   * without keeping it; concurrent misses on such a key still share one load, and whether the key
+   * is admitted is decided once, by the thread running it.
+   *
+   * @param key is the key to look for.
+   * @param loader computes the value if the key is missing.
+   * @return the cached or newly loaded value.
+   * @throws ExecutionException if the loader threw a checked exception, which is its cause.
+   */
+  public V get(K key, Callable<? extends V> loader) throws ExecutionException {
+    // A present key is read like above, so a due refresh reloads in the background instead of
+    // with the given loader on this thread.
+    V value = this.get(key);
+    if (value != null) {
+      return value;
+    }
+    return this.sketch == null ? this.load(key, loader) : this.loadOnce(key, loader);
+  }
+
+  /**
+   * Removes every entry. Their weight is taken off the cache's total, but the request counts of the
+   * frequency policy are kept.
+   */
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  /**
+   * Takes a snapshot of the cache's statistics.
+   *
+   * @return the statistics since the cache was built.
+   */
+  public Stats stats() {
+    // Guava drops expired entries lazily; drop them now so the size and expirations are current.
+    cache.cleanUp();
+    CacheStats guava = cache.stats();
+    long loads = guava.loadCount() + this.unadmittedLoads.sum();
+    double totalNanos = guava.totalLoadTime() + this.unadmittedLoadNanos.sum();
+    return new Stats(
+        this.hits.sum(),
+        this.misses.sum(),
+        loads,
+        guava.loadExceptionCount(),
+        loads == 0 ? 0 : totalNanos / loads / 1_000_000,
+        this.evictions.sum(),
+        this.expirations.sum(),
+        this.rejections.sum(),
+        cache.size(),
+        this.weight.sum());
+  }
+
+  /** Decides whether a new value is kept; replacing a value already kept always is. */
+  private boolean admits(K key, V value) {
+    if (this.sketch == null || this.isFrequent(key) || cache.asMap().containsKey(key)) {
+      return true;
+    }
+    boolean full =
+        this.maximumWeight >= 0
+            ? this.weight.sum() + this.weigher.bytes(key, value) > this.maximumWeight
+            : this.isFull();
+    if (full) {
+      this.rejections.increment();
+    }
+    return !full;
+  }
+
+  private boolean isFrequent(K key) {
+    return this.sketch.frequency(key) >= ADMISSION_FREQUENCY;
+  }
+
+  private boolean isFull() {
+    if (this.maximumSize >= 0) {
+      return cache.size() >= this.maximumSize;
+    }
+    return this.maximumWeight >= 0 && this.weight.sum() >= this.maximumWeight;
+  }
+
+  /** Loads a missing key into the cache; Guava lets only one thread load a key at a time. */
+  private V load(K key, Callable<? extends V> loader) throws ExecutionException {
+    try {
+      return cache.get(key, loader);
+    } catch (UncheckedExecutionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Loads a missing key under the frequency policy. If a load of the same key is already running,
+   * its value is waited for instead. Otherwise the key is loaded into the cache if it is admitted,
+   * or outside of it if not, and that load is counted like the cache's own. Guava's loads cannot be
+   * shared with the loads outside of it, so both kinds run here, one per key at a time.
+   */
+  private V loadOnce(K key, Callable<? extends V> loader) throws ExecutionException {
+    CompletableFuture<V> load = new CompletableFuture<>();
+    CompletableFuture<V> running = this.inFlight.putIfAbsent(key, load);
+    if (running != null) {
+      try {
+        return Uninterruptibles.getUninterruptibly(running);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException cause) {
+          throw cause;
+        }
+        throw e;
+      }
+    }
+
+    boolean admitted = !this.isFull() || this.isFrequent(key);
+    long start = System.nanoTime();
+    try {
+      V value;
+      if (admitted) {
+        value = this.load(key, loader);
+      } else {
+        value = loader.call();
+        this.put(key, value);
+      }
+      load.complete(value);
+      return value;
+    } catch (ExecutionException e) {
+      load.completeExceptionally(e.getCause());
+      throw e;
+    } catch (RuntimeException | Error e) {
+      load.completeExceptionally(e);
+      throw e;
+    } catch (Exception e) {
+      load.completeExceptionally(e);
+      throw new ExecutionException(e);
+    } finally {
+      this.inFlight.remove(key, load);
+      if (!admitted) {
+        this.unadmittedLoads.increment();
+        this.unadmittedLoadNanos.add(System.nanoTime() - start);
+      }
+    }
+  }
+
+  /** Weighs an entry for Guava, keeping the running total. */
+  private int weigh(K key, V value) {
+    long bytes = this.weigher.bytes(key, value);
+    this.weight.add(bytes);
+    return (int) Math.min(Integer.MAX_VALUE, bytes);
+  }
+
+  private void onRemoval(RemovalNotification<K, V> removal) {
+    if (this.weigher != null && removal.getKey() != null && removal.getValue() != null) {
+      this.weight.add(-this.weigher.bytes(removal.getKey(), removal.getValue()));
+    }
+    if (removal.getCause() == RemovalCause.SIZE) {
+      this.evictions.increment();
+    } else if (removal.getCause() == RemovalCause.EXPIRED) {
+      this.expirations.increment();
+    }
+  }
+
+  private static <K, V> Builder<K, V> legacyBuilder(
+      boolean sizeCap, int size, boolean timeCap, int seconds) {
+    Builder<K, V> builder = builder();
+    if (sizeCap) {
+      builder.maximumSize(size);
+    }
+    if (timeCap) {
+      builder.expireAfterAccess(Duration.ofSeconds(seconds));
+    }
+    return builder;
+  }
+
+  /**
+   * Describes a GenericCache. Every setting is optional, but a cache is bounded by size or by
+   * weight, not both, and only a cache that expires after write can refresh ahead.
+   *
+   * @param <K> is the type of the key for the cache object.
+   * @param <V> is the type of the value in the cache object.
+   */
+  public static class Builder<K, V> {
+    private long maximumSize = -1;
+    private long maximumWeight = -1;
+    private Weigher<? super K, ? super V> weigher;
+    private Duration expireAfterWrite;
+    private Duration expireAfterAccess;
+    private Policy policy = Policy.LRU;
+    private Loader<K, V> refreshLoader;
+    private Duration refreshGrace;
+    private Executor refreshExecutor = REFRESH_EXECUTOR;
+
+    private Builder() {}
+
+    /**
+     * Caps the number of entries.
+     *
+     * @param size the most entries held at once.
+     * @return this builder.
+     */
+    public Builder<K, V> maximumSize(long size) {
+      this.maximumSize = size;
+      return this;
+    }
+
+    /**
+     * Caps the estimated bytes of the entries.
+     *
+     * @param bytes the most bytes held at once.
+     * @param weigher estimates the bytes of one entry.
+     * @return this builder.
+     */
+    public Builder<K, V> maximumWeight(long bytes, Weigher<? super K, ? super V> weigher) {
+      this.maximumWeight = bytes;
+      this.weigher = weigher;
+      return this;
+    }
+
+    /**
+     * Expires each entry a fixed time after it was written, however often it is read.
+     *
+     * @param ttl the time to live.
+     * @return this builder.
+     */
+    public Builder<K, V> expireAfterWrite(Duration ttl) {
+      this.expireAfterWrite = ttl;
+      return this;
+    }
+
+    /**
+     * Expires each entry once it has not been read or written for a time.
+     *
+     * @param idle the time an entry may go unused.
+     * @return this builder.
+     */
+    public Builder<K, V> expireAfterAccess(Duration idle) {
+      this.expireAfterAccess = idle;
+      return this;
+    }
+
+    /**
+     * Chooses which entries a full cache keeps.
+     *
+     * @param policy the policy; LRU by default.
+     * @return this builder.
+     */
+    public Builder<K, V> policy(Policy policy) {
+      this.policy = policy;
+      return this;
+    }
+
+    /**
+     * Reloads entries in the background once they are older than the time to live given to {@link
+     * #expireAfterWrite}, serving the stale value meanwhile.
+     *
+     * @param loader loads the value of a key.
+     * @param grace how long past the time to live a stale entry is still served.
+     * @return this builder.
+     */
+    public Builder<K, V> refreshAhead(Loader<K, V> loader, Duration grace) {
+      this.refreshLoader = loader;
+      this.refreshGrace = grace;
+      return this;
+    }
+
+    /**
+     * Sets the executor reloads run on, instead of the shared {@link #REFRESH_EXECUTOR}.
+     *
+     * @param executor the executor; it should be bounded.
+     * @return this builder.
+     */
+    public Builder<K, V> refreshExecutor(Executor executor) {
+      this.refreshExecutor = executor;
+      return this;
+    }
+
+    /**
+     * Builds the cache.
+     *
+     * @return the new cache.
+     * @throws IllegalStateException if the settings contradict each other.
+     */
+    public GenericCache<K, V> build() {
+      if (this.maximumSize >= 0 && this.maximumWeight >= 0) {
+        throw new IllegalStateException("A cache is bounded by size or by weight, not both.");
+      }
+      if (this.refreshLoader != null && this.expireAfterWrite == null) {
+        throw new IllegalStateException("Only a cache that expires after write can refresh.");
+      }
+      return new GenericCache<>(this);
+    }
   }
 }
@@ -0,0 +1,165 @@
+package edu.brown.cs.student.main.server.handlers.census.caching;
+
+import edu.brown.cs.student.main.server.handlers.census.BroadbandDatasource;
+import edu.brown.cs.student.main.server.handlers.census.BroadbandTable;
+import edu.brown.cs.student.main.server.handlers.census.CensusData;
+import edu.brown.cs.student.main.server.handlers.census.exceptions.CountyNotFoundException;
+import edu.brown.cs.student.main.server.handlers.census.exceptions.DatasourceException;
+import edu.brown.cs.student.main.server.handlers.census.exceptions.StateNotFoundException;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PrefetchedCensusSource serves broadband data from a table of every county, fetched from the
+ * Census API in bulk ahead of the requests for it, so a request for a county in the table is a hash
+ * lookup. Counties missing from the table, such as those too small for the yearly survey, are
+ * requested from a fallback datasource instead.
+ *
+ * <p>The table is fetched on a background thread when refreshing starts and again on a schedule.
+ * Each new table replaces the old one with a single reference swap, so lookups never take a lock
+ * and a failed fetch keeps the table already loaded. Until the first fetch completes, every request
+ * goes to the fallback.
+ */
+public class PrefetchedCensusSource implements BroadbandDatasource {
+  /** Broadband estimates change once a year, so by default the table is fetched again daily. */
+  public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofDays(1);
+
+  private final Callable<BroadbandTable> loader; // Fetches a new table.
+  private final BroadbandDatasource fallback; // Answers for counties missing from the table.
+  private final ScheduledExecutorService refresher =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "broadband-table-refresh");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private volatile BroadbandTable table; // Replaced whole by each refresh.
+
+  /**
+   * Constructor for PrefetchedCensusSource. The table is empty until {@link #refresh} or {@link
+   * #startRefreshing} is called.
+   *
+   * @param loader fetches the table of every county.
+   * @param fallback is the datasource asked for counties missing from the table.
+   */
+  public PrefetchedCensusSource(Callable<BroadbandTable> loader, BroadbandDatasource fallback) {
+    this.loader = loader;
+    this.fallback = fallback;
+    this.table = BroadbandTable.EMPTY;
+  }
+
+  /**
+   * Fetches the table now, on a background thread, and again after each interval.
+   *
+   * @param interval the time between the end of one fetch and the start of the next.
+   */
+  public void startRefreshing(Duration interval) {
+    this.refresher.scheduleWithFixedDelay(
+        this::refresh, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Fetches a new table and swaps it in, keeping the current one if the fetch fails.
+   *
+   * @return true if a new table was swapped in.
+   */
+  public boolean refresh() {
+    long start = System.nanoTime();
+    BroadbandTable fetched;
+    try {
+      fetched = this.loader.call();
+    } catch (Exception e) {
+      System.out.println("Could not fetch the broadband table: " + e.getMessage());
+      return false;
+    }
+    this.table = fetched;
+    long millis = (System.nanoTime() - start) / 1_000_000;
+    System.out.println(
+        "Fetched broadband data for "
+            + fetched.countyCount()
+            + " counties in "
+            + fetched.stateCount()
+            + " states in "
+            + millis
+            + " ms");
+    return true;
+  }
+
+  /**
+   * Returns the table currently served from.
+   *
+   * @return the latest table fetched, or an empty table before the first fetch.
+   */
+  public BroadbandTable table() {
+    return this.table;
+  }
+
+  /**
+   * Override of the getBroadbandData method from the BroadbandDatasource interface. Answers from
+   * the table, or from the fallback datasource if the county is not in it.
+   *
+   * @param state is the state to be searched.
+   * @param county is the county within the state to be searched.
+   * @return the CensusData object if found.
+   * @throws IOException
+   * @throws StateNotFoundException
+   * @throws CountyNotFoundException
+   * @throws DatasourceException
+   */
+  @Override
+  public CensusData getBroadbandData(String state, String county)
+      throws IOException, StateNotFoundException, CountyNotFoundException, DatasourceException {
+    CensusData censusData = this.table.get(state, county);
+    return censusData != null ? censusData : this.fallback.getBroadbandData(state, county);
+  }
+
+  /**
+   * Override of the getBroadbandDataAsync method from the BroadbandDatasource interface. A county
+   * in the table completes at once; any other is requested from the fallback datasource.
+   *
+   * @param state is the state to be searched.
+   * @param county is the county within the state to be searched.
+   * @return a future of the CensusData object.
+   */
+  @Override
+  public CompletableFuture<CensusData> getBroadbandDataAsync(String state, String county) {
+    CensusData censusData = this.table.get(state, county);
+    return censusData != null
+        ? CompletableFuture.completedFuture(censusData)
+        : this.fallback.getBroadbandDataAsync(state, county);
+  }
+
+  /**
+   * Override of the supportsStateQueries method from the BroadbandDatasource interface. A state
+   * missing from the table is fetched from the fallback, so whole states are supported only if the
+   * fallback supports them.
+   *
+   * @return whether the fallback datasource can fetch whole states.
+   */
+  @Override
+  public boolean supportsStateQueries() {
+    return this.fallback.supportsStateQueries();
+  }
+
+  /**
+   * Override of the getStateBroadbandDataAsync method from the BroadbandDatasource interface. A
+   * state in the table completes at once; any other is requested from the fallback datasource.
+   *
+   * @param state is the state to be searched.
+   * @return a future of the CensusData of the state's counties, by normalized county name.
+   */
+  @Override
+  public CompletableFuture<Map<String, CensusData>> getStateBroadbandDataAsync(String state) {
+    Map<String, CensusData> counties = this.table.state(state);
+    return counties != null
+        ? CompletableFuture.completedFuture(counties)
+        : this.fallback.getStateBroadbandDataAsync(state);
+  }
+}
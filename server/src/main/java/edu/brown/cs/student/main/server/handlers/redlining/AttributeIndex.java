@@ -0,0 +1,164 @@
+package edu.brown.cs.student.main.server.handlers.redlining;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A dictionary encoded index over one short attribute of every feature, such as its HOLC grade or
+ * city. Each distinct value gets a small integer code, each feature stores only its value's code,
+ * and each code maps to the sorted ids of the features having it. A lookup costs only the size of
+ * its result, the size of that result is known before it is read, and checking a feature against a
+ * set of values is a single array lookup on its code instead of a string comparison.
+ *
+ * <p>Values are matched ignoring case and surrounding whitespace, but each code keeps the exact
+ * value it was first seen with, and {@link #value(int)} returns that one shared instance for every
+ * feature having it.
+ */
+public class AttributeIndex {
+  private static final int[] NO_IDS = new int[0];
+
+  private final String[] values; // Code -> value.
+  private final String[] normalized; // Code -> normalized value.
+  private final int[] codes; // Feature id -> code, or -1 for a null value.
+  private final int[][] postings; // Code -> sorted feature ids.
+
+  /**
+   * Builds the index over the given values.
+   *
+   * @param values each feature's value, indexed by feature id; entries may be null.
+   */
+  public AttributeIndex(List<String> values) {
+    Map<String, Integer> dictionary = new HashMap<>();
+    List<String> distinct = new ArrayList<>();
+    List<IntList> lists = new ArrayList<>();
+    this.codes = new int[values.size()];
+    for (int id = 0; id < values.size(); id++) {
+      String value = values.get(id);
+      if (value == null) {
+        this.codes[id] = -1;
+        continue;
+      }
+      int code =
+          dictionary.computeIfAbsent(
+              value,
+              v -> {
+                distinct.add(v);
+                lists.add(new IntList());
+                return distinct.size() - 1;
+              });
+      this.codes[id] = code;
+      lists.get(code).add(id);
+    }
+    this.values = distinct.toArray(new String[0]);
+    this.normalized = new String[this.values.length];
+    for (int code = 0; code < this.values.length; code++) {
+      this.normalized[code] = normalize(this.values[code]);
+    }
+    this.postings = new int[lists.size()][];
+    for (int code = 0; code < lists.size(); code++) {
+      this.postings[code] = lists.get(code).toArray();
+    }
+  }
+
+  /**
+   * Returns a feature's value.
+   *
+   * @param id the feature's id.
+   * @return the shared instance of its value, or null if it has none.
+   */
+  public String value(int id) {
+    int code = this.codes[id];
+    return code < 0 ? null : this.values[code];
+  }
+
+  /**
+   * Returns the number of distinct values.
+   *
+   * @return the size of the dictionary.
+   */
+  public int distinctValues() {
+    return this.values.length;
+  }
+
+  /**
+   * Finds the features having any of the given values, ignoring case and surrounding whitespace.
+   *
+   * @param values the values to look for.
+   * @return the ids of the matching features, sorted.
+   */
+  public int[] search(List<String> values) {
+    boolean[] accepted = this.accepted(values);
+    int[] result = NO_IDS;
+    for (int code = 0; code < accepted.length; code++) {
+      if (accepted[code]) {
+        result = KeywordIndex.union(result, this.postings[code]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Counts the features having any of the given values, without building the result.
+   *
+   * @param values the values to look for.
+   * @return the number of matching features.
+   */
+  public long count(List<String> values) {
+    boolean[] accepted = this.accepted(values);
+    long count = 0;
+    for (int code = 0; code < accepted.length; code++) {
+      if (accepted[code]) {
+        count += this.postings[code].length;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Keeps the candidates having any of the given values. Each check compares the candidate's code
+   * against the accepted codes, so no strings are read.
+   *
+   * @param candidates the ids to check, in order.
+   * @param values the values to look for.
+   * @return the ids of the matching candidates, in the same order.
+   */
+  public int[] filter(int[] candidates, List<String> values) {
+    boolean[] accepted = this.accepted(values);
+    IntList kept = new IntList();
+    for (int id : candidates) {
+      int code = this.codes[id];
+      if (code >= 0 && accepted[code]) {
+        kept.add(id);
+      }
+    }
+    return kept.toArray();
+  }
+
+  /** Marks the codes of every value matching one of the given values. */
+  private boolean[] accepted(List<String> values) {
+    Set<String> wanted = new HashSet<>();
+    for (String value : values) {
+      wanted.add(normalize(value));
+    }
+    boolean[] accepted = new boolean[this.values.length];
+    for (int code = 0; code < this.values.length; code++) {
+      accepted[code] = wanted.contains(this.normalized[code]);
+    }
+    return accepted;
+  }
+
+  /**
+   * Normalizes a value the way the index matches it.
+   *
+   * @param value the value.
+   * @return the value, trimmed and lowercased.
+   */
+  public static String normalize(String value) {
+    return value.trim().toLowerCase(Locale.ROOT);
+  }
+}
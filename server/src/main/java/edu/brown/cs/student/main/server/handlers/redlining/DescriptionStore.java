@@ -0,0 +1,310 @@
+package edu.brown.cs.student.main.server.handlers.redlining;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A dictionary encoded store for the area description data of every feature in a dataset. The
+ * descriptions repeat heavily: every feature uses the same few dozen keys, and many values (such as
+ * "Good", "None" or a shared paragraph) appear in hundreds of features. So each distinct key is
+ * kept once as a String, each distinct value is kept once as UTF-8 bytes in one shared byte array,
+ * and a feature's description is just a run of (key code, value code) pairs:
+ *
+ * <ul>
+ *   <li>featureOffsets[f] is the first entry of feature f;
+ *   <li>entryKeys[e] and entryValues[e] are the key and value codes of entry e, with a value code
+ *       of -1 for a null value;
+ *   <li>valueOffsets[v] is the first byte of value v in valueBytes.
+ * </ul>
+ *
+ * <p>Each offset array has one trailing entry, as in {@link GeometryStore}. {@link
+ * #description(int)} returns a read-only Map view decoding values on access, so the rest of the
+ * server (and Moshi) can keep treating descriptions as ordinary maps. The store is immutable once
+ * built and is shared by all request threads.
+ */
+public class DescriptionStore {
+  private final String[] keys;
+  private final byte[] valueBytes;
+  private final int[] valueOffsets;
+  private final int[] entryKeys;
+  private final int[] entryValues;
+  private final int[] featureOffsets;
+  private final int[] missing; // Sorted ids of the features with no description at all.
+
+  /**
+   * Creates a store over already built arrays. Use a {@link Builder} to build one incrementally.
+   *
+   * @param keys every distinct key, indexed by key code.
+   * @param valueBytes every distinct value's UTF-8 bytes, back to back.
+   * @param valueOffsets the first byte of each value, plus a trailing end offset.
+   * @param entryKeys the key code of each entry.
+   * @param entryValues the value code of each entry.
+   * @param featureOffsets the first entry of each feature, plus a trailing end offset.
+   * @param missing the sorted ids of the features whose description is null.
+   */
+  public DescriptionStore(
+      String[] keys,
+      byte[] valueBytes,
+      int[] valueOffsets,
+      int[] entryKeys,
+      int[] entryValues,
+      int[] featureOffsets,
+      int[] missing) {
+    this.keys = keys;
+    this.valueBytes = valueBytes;
+    this.valueOffsets = valueOffsets;
+    this.entryKeys = entryKeys;
+    this.entryValues = entryValues;
+    this.featureOffsets = featureOffsets;
+    this.missing = missing;
+  }
+
+  /**
+   * Writes the store's arrays to a snapshot.
+   *
+   * @param writer the snapshot to write to.
+   * @throws IOException if writing fails.
+   */
+  public void writeTo(SnapshotWriter writer) throws IOException {
+    writer.writeInt(this.keys.length);
+    for (String key : this.keys) {
+      writer.writeString(key);
+    }
+    writer.writeBytes(this.valueBytes);
+    writer.writeIntArray(this.valueOffsets);
+    writer.writeIntArray(this.entryKeys);
+    writer.writeIntArray(this.entryValues);
+    writer.writeIntArray(this.featureOffsets);
+    writer.writeIntArray(this.missing);
+  }
+
+  /**
+   * Restores a store written by {@link #writeTo}.
+   *
+   * @param reader the snapshot to read from.
+   * @return the restored store.
+   */
+  public static DescriptionStore readFrom(SnapshotReader reader) {
+    String[] keys = new String[reader.readInt()];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = reader.readString();
+    }
+    return new DescriptionStore(
+        keys,
+        reader.readBytes(),
+        reader.readIntArray(),
+        reader.readIntArray(),
+        reader.readIntArray(),
+        reader.readIntArray(),
+        reader.readIntArray());
+  }
+
+  /**
+   * Returns the number of features in the store.
+   *
+   * @return the feature count.
+   */
+  public int featureCount() {
+    return this.featureOffsets.length - 1;
+  }
+
+  /**
+   * Returns the number of distinct values in the store.
+   *
+   * @return the value count.
+   */
+  public int valueCount() {
+    return this.valueOffsets.length - 1;
+  }
+
+  /**
+   * Returns the number of bytes the distinct values take up.
+   *
+   * @return the UTF-8 size of every distinct value.
+   */
+  public int valueByteCount() {
+    return this.valueBytes.length;
+  }
+
+  /**
+   * Returns a read-only view of a feature's description.
+   *
+   * @param feature the feature's id.
+   * @return its description, in the order it was added, or null if it had none.
+   */
+  public Map<String, String> description(int feature) {
+    return Arrays.binarySearch(this.missing, feature) >= 0 ? null : new Description(feature);
+  }
+
+  /**
+   * Decodes one distinct value.
+   *
+   * @param value the value's code, or -1 for a null value.
+   * @return the value.
+   */
+  private String value(int value) {
+    if (value < 0) {
+      return null;
+    }
+    int start = this.valueOffsets[value];
+    return new String(
+        this.valueBytes, start, this.valueOffsets[value + 1] - start, StandardCharsets.UTF_8);
+  }
+
+  /** A feature's description, decoding each value as it is read. */
+  private class Description extends AbstractMap<String, String> {
+    private final int start;
+    private final int end;
+
+    Description(int feature) {
+      this.start = DescriptionStore.this.featureOffsets[feature];
+      this.end = DescriptionStore.this.featureOffsets[feature + 1];
+    }
+
+    @Override
+    public int size() {
+      return this.end - this.start;
+    }
+
+    @Override
+    public String get(Object key) {
+      for (int e = this.start; e < this.end; e++) {
+        if (keys[entryKeys[e]].equals(key)) {
+          return value(entryValues[e]);
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      for (int e = this.start; e < this.end; e++) {
+        if (keys[entryKeys[e]].equals(key)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+      return new AbstractSet<>() {
+        @Override
+        public int size() {
+          return Description.this.size();
+        }
+
+        @Override
+        public Iterator<Map.Entry<String, String>> iterator() {
+          return new Iterator<>() {
+            private int next = Description.this.start;
+
+            @Override
+            public boolean hasNext() {
+              return this.next < Description.this.end;
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+              if (!this.hasNext()) {
+                throw new NoSuchElementException();
+              }
+              int e = this.next++;
+              return new AbstractMap.SimpleImmutableEntry<>(
+                  keys[entryKeys[e]], value(entryValues[e]));
+            }
+          };
+        }
+      };
+    }
+  }
+
+  /**
+   * Builds a DescriptionStore one feature at a time, assigning each new key and value the next code
+   * as it is first seen.
+   */
+  public static class Builder {
+    private final Map<String, Integer> keyCodes = new HashMap<>();
+    private final Map<String, Integer> valueCodes = new HashMap<>();
+    private final IntList valueOffsets = new IntList();
+    private final IntList entryKeys = new IntList();
+    private final IntList entryValues = new IntList();
+    private final IntList featureOffsets = new IntList();
+    private final IntList missing = new IntList();
+    private byte[] valueBytes = new byte[4096];
+    private int byteCount = 0;
+
+    /**
+     * Appends the next feature's description.
+     *
+     * @param description the description, possibly null.
+     */
+    public void add(Map<String, String> description) {
+      int feature = this.featureOffsets.size();
+      this.featureOffsets.add(this.entryKeys.size());
+      if (description == null) {
+        this.missing.add(feature);
+        return;
+      }
+      for (Map.Entry<String, String> entry : description.entrySet()) {
+        int key = this.keyCodes.computeIfAbsent(entry.getKey(), k -> this.keyCodes.size());
+        this.entryKeys.add(key);
+        this.entryValues.add(this.valueCode(entry.getValue()));
+      }
+    }
+
+    /** Returns a value's code, appending its bytes if it has not been seen before. */
+    private int valueCode(String value) {
+      if (value == null) {
+        return -1;
+      }
+      Integer code = this.valueCodes.get(value);
+      if (code != null) {
+        return code;
+      }
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      if (this.byteCount + bytes.length > this.valueBytes.length) {
+        int capacity = Math.max(this.valueBytes.length * 2, this.byteCount + bytes.length);
+        this.valueBytes = Arrays.copyOf(this.valueBytes, capacity);
+      }
+      System.arraycopy(bytes, 0, this.valueBytes, this.byteCount, bytes.length);
+      this.valueOffsets.add(this.byteCount);
+      this.byteCount += bytes.length;
+      this.valueCodes.put(value, this.valueCodes.size());
+      return this.valueCodes.size() - 1;
+    }
+
+    /**
+     * Trims the arrays to size and closes every offset array with its trailing end offset.
+     *
+     * @return the finished store.
+     */
+    public DescriptionStore build() {
+      String[] keys = new String[this.keyCodes.size()];
+      for (Map.Entry<String, Integer> entry : this.keyCodes.entrySet()) {
+        keys[entry.getValue()] = entry.getKey();
+      }
+      int[] valueArray = Arrays.copyOf(this.valueOffsets.toArray(), this.valueOffsets.size() + 1);
+      valueArray[this.valueOffsets.size()] = this.byteCount;
+      int[] featureArray =
+          Arrays.copyOf(this.featureOffsets.toArray(), this.featureOffsets.size() + 1);
+      featureArray[this.featureOffsets.size()] = this.entryKeys.size();
+      return new DescriptionStore(
+          keys,
+          Arrays.copyOf(this.valueBytes, this.byteCount),
+          valueArray,
+          this.entryKeys.toArray(),
+          this.entryValues.toArray(),
+          featureArray,
+          this.missing.toArray());
+    }
+  }
+}
@@ -0,0 +1,164 @@
+package edu.brown.cs.student.main.server.handlers.redlining;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * The pre-encoded JSON of every feature in a dataset, stored back to back in one byte array with an
+ * offset array marking where each feature's fragment starts. Fragments are encoded once at load
+ * time, so a response is just the matching fragments copied between a fixed prefix and suffix, with
+ * no per-request serialization.
+ */
+public class FeatureFragments {
+  private final byte[] data;
+  private final int[] offsets; // Fragment i spans [offsets[i], offsets[i + 1]) of data.
+
+  /**
+   * Creates fragments over already built arrays. Use a {@link Builder} to build them incrementally.
+   *
+   * @param data every fragment's bytes, back to back.
+   * @param offsets the start of each fragment, plus a trailing end offset.
+   */
+  public FeatureFragments(byte[] data, int[] offsets) {
+    this.data = data;
+    this.offsets = offsets;
+  }
+
+  /**
+   * Returns the number of fragments.
+   *
+   * @return the fragment count.
+   */
+  public int count() {
+    return this.offsets.length - 1;
+  }
+
+  /**
+   * Returns the total number of bytes in all fragments.
+   *
+   * @return the encoded size of the whole dataset's features.
+   */
+  public int totalBytes() {
+    return this.data.length;
+  }
+
+  /**
+   * Returns the exact size of the JSON array body that {@link #writeArray} writes for these ids.
+   *
+   * @param ids the feature ids to write.
+   * @return the number of bytes, including the separating commas.
+   */
+  public int arraySize(int[] ids) {
+    int size = Math.max(0, ids.length - 1);
+    for (int id : ids) {
+      size += this.offsets[id + 1] - this.offsets[id];
+    }
+    return size;
+  }
+
+  /**
+   * Writes the fragments of the given features, comma separated, without the enclosing brackets.
+   *
+   * @param out the stream to write to.
+   * @param ids the feature ids to write, in order.
+   * @throws IOException if the stream fails.
+   */
+  public void writeArray(OutputStream out, int[] ids) throws IOException {
+    for (int i = 0; i < ids.length; i++) {
+      if (i > 0) {
+        out.write(',');
+      }
+      this.writeFragment(out, ids[i]);
+    }
+  }
+
+  /**
+   * Writes a single feature's fragment.
+   *
+   * @param out the stream to write to.
+   * @param id the feature id.
+   * @throws IOException if the stream fails.
+   */
+  public void writeFragment(OutputStream out, int id) throws IOException {
+    out.write(this.data, this.offsets[id], this.offsets[id + 1] - this.offsets[id]);
+  }
+
+  /**
+   * Assembles a complete response: the prefix, the fragments of the given features separated by
+   * commas, then the suffix, in one exactly sized array.
+   *
+   * @param prefix the bytes before the features.
+   * @param ids the feature ids to include, in order.
+   * @param suffix the bytes after the features.
+   * @return the assembled bytes.
+   */
+  public byte[] assemble(byte[] prefix, int[] ids, byte[] suffix) {
+    byte[] out = new byte[prefix.length + this.arraySize(ids) + suffix.length];
+    System.arraycopy(prefix, 0, out, 0, prefix.length);
+    int position = prefix.length;
+    for (int i = 0; i < ids.length; i++) {
+      if (i > 0) {
+        out[position++] = ',';
+      }
+      int length = this.offsets[ids[i] + 1] - this.offsets[ids[i]];
+      System.arraycopy(this.data, this.offsets[ids[i]], out, position, length);
+      position += length;
+    }
+    System.arraycopy(suffix, 0, out, position, suffix.length);
+    return out;
+  }
+
+  /**
+   * Writes the fragment bytes and offsets to a snapshot.
+   *
+   * @param writer the snapshot to write to.
+   * @throws IOException if writing fails.
+   */
+  public void writeTo(SnapshotWriter writer) throws IOException {
+    writer.writeBytes(this.data);
+    writer.writeIntArray(this.offsets);
+  }
+
+  /**
+   * Restores fragments written by {@link #writeTo}.
+   *
+   * @param reader the snapshot to read from.
+   * @return the restored fragments.
+   */
+  public static FeatureFragments readFrom(SnapshotReader reader) {
+    return new FeatureFragments(reader.readBytes(), reader.readIntArray());
+  }
+
+  /** Collects fragments one feature at a time, in feature id order. */
+  public static class Builder {
+    private final ByteArrayOutputStream data = new ByteArrayOutputStream(1 << 20);
+    private int[] offsets = new int[64];
+    private int count = 0;
+
+    /**
+     * Appends the next feature's encoded JSON.
+     *
+     * @param fragment the feature's JSON bytes.
+     */
+    public void add(byte[] fragment) {
+      if (this.count + 1 >= this.offsets.length) {
+        this.offsets = Arrays.copyOf(this.offsets, this.offsets.length * 2);
+      }
+      this.offsets[this.count++] = this.data.size();
+      this.data.writeBytes(fragment);
+    }
+
+    /**
+     * Finishes the fragments, closing the offsets with a trailing end offset.
+     *
+     * @return the finished fragments.
+     */
+    public FeatureFragments build() {
+      int[] offsetArray = Arrays.copyOf(this.offsets, this.count + 1);
+      offsetArray[this.count] = this.data.size();
+      return new FeatureFragments(this.data.toByteArray(), offsetArray);
+    }
+  }
+}
@@ -0,0 +1,331 @@
+package edu.brown.cs.student.main.server.handlers.redlining;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A columnar store for the polygon geometry of every feature in a dataset. Instead of boxing each
+ * coordinate into a Double inside four levels of lists, all vertices of all features live in one
+ * flat double array, interleaved as x0, y0, x1, y1, ... Three offset arrays describe the nesting:
+ *
+ * <ul>
+ *   <li>featureOffsets[f] is the first polygon of feature f;
+ *   <li>polygonOffsets[p] is the first ring of polygon p (its outer ring; the rest are holes);
+ *   <li>ringOffsets[r] is the first vertex of ring r.
+ * </ul>
+ *
+ * <p>Each offset array has one trailing entry, so the elements of item i always span [offsets[i],
+ * offsets[i + 1]). The store is immutable once built and is shared by all request threads.
+ */
+public class GeometryStore {
+  private final double[] coords;
+  private final int[] ringOffsets;
+  private final int[] polygonOffsets;
+  private final int[] featureOffsets;
+
+  /**
+   * Creates a store over already built arrays. Use a {@link Builder} to build one incrementally.
+   *
+   * @param coords the interleaved vertex coordinates.
+   * @param ringOffsets the first vertex of each ring, plus a trailing end offset.
+   * @param polygonOffsets the first ring of each polygon, plus a trailing end offset.
+   * @param featureOffsets the first polygon of each feature, plus a trailing end offset.
+   */
+  public GeometryStore(
+      double[] coords, int[] ringOffsets, int[] polygonOffsets, int[] featureOffsets) {
+    this.coords = coords;
+    this.ringOffsets = ringOffsets;
+    this.polygonOffsets = polygonOffsets;
+    this.featureOffsets = featureOffsets;
+  }
+
+  /**
+   * Writes the coordinate and offset arrays to a snapshot.
+   *
+   * @param writer the snapshot to write to.
+   * @throws IOException if writing fails.
+   */
+  public void writeTo(SnapshotWriter writer) throws IOException {
+    writer.writeDoubleArray(this.coords);
+    writer.writeIntArray(this.ringOffsets);
+    writer.writeIntArray(this.polygonOffsets);
+    writer.writeIntArray(this.featureOffsets);
+  }
+
+  /**
+   * Restores a store written by {@link #writeTo}.
+   *
+   * @param reader the snapshot to read from.
+   * @return the restored store.
+   */
+  public static GeometryStore readFrom(SnapshotReader reader) {
+    return new GeometryStore(
+        reader.readDoubleArray(),
+        reader.readIntArray(),
+        reader.readIntArray(),
+        reader.readIntArray());
+  }
+
+  /**
+   * Returns the number of features in the store.
+   *
+   * @return the feature count.
+   */
+  public int featureCount() {
+    return this.featureOffsets.length - 1;
+  }
+
+  /**
+   * Returns the total number of vertices in the store.
+   *
+   * @return the vertex count.
+   */
+  public int vertexCount() {
+    return this.coords.length / 2;
+  }
+
+  /**
+   * Returns the first polygon of a feature.
+   *
+   * @param feature the feature id.
+   * @return the index of its first polygon.
+   */
+  public int polygonStart(int feature) {
+    return this.featureOffsets[feature];
+  }
+
+  /**
+   * Returns one past the last polygon of a feature.
+   *
+   * @param feature the feature id.
+   * @return the index after its last polygon.
+   */
+  public int polygonEnd(int feature) {
+    return this.featureOffsets[feature + 1];
+  }
+
+  /**
+   * Returns the first ring of a polygon.
+   *
+   * @param polygon the polygon index.
+   * @return the index of its first ring.
+   */
+  public int ringStart(int polygon) {
+    return this.polygonOffsets[polygon];
+  }
+
+  /**
+   * Returns one past the last ring of a polygon.
+   *
+   * @param polygon the polygon index.
+   * @return the index after its last ring.
+   */
+  public int ringEnd(int polygon) {
+    return this.polygonOffsets[polygon + 1];
+  }
+
+  /**
+   * Returns the first vertex of a ring.
+   *
+   * @param ring the ring index.
+   * @return the index of its first vertex.
+   */
+  public int vertexStart(int ring) {
+    return this.ringOffsets[ring];
+  }
+
+  /**
+   * Returns one past the last vertex of a ring.
+   *
+   * @param ring the ring index.
+   * @return the index after its last vertex.
+   */
+  public int vertexEnd(int ring) {
+    return this.ringOffsets[ring + 1];
+  }
+
+  /**
+   * Returns the x (longitude) of a vertex.
+   *
+   * @param vertex the vertex index.
+   * @return its x coordinate.
+   */
+  public double x(int vertex) {
+    return this.coords[vertex * 2];
+  }
+
+  /**
+   * Returns the y (latitude) of a vertex.
+   *
+   * @param vertex the vertex index.
+   * @return its y coordinate.
+   */
+  public double y(int vertex) {
+    return this.coords[vertex * 2 + 1];
+  }
+
+  /**
+   * Writes the envelope of a feature into slot i of an envelopes array as minX, minY, maxX, maxY,
+   * or four NaNs if the feature has no vertices. The feature's vertices are contiguous, so this is
+   * a single linear pass over the coordinate array.
+   *
+   * @param feature the feature id.
+   * @param envelopes the array to write into, four doubles per slot.
+   * @param i the slot to write.
+   */
+  public void envelope(int feature, double[] envelopes, int i) {
+    int firstVertex = this.ringOffsets[this.polygonOffsets[this.featureOffsets[feature]]];
+    int endVertex = this.ringOffsets[this.polygonOffsets[this.featureOffsets[feature + 1]]];
+    if (firstVertex == endVertex) {
+      Arrays.fill(envelopes, i * 4, i * 4 + 4, Double.NaN);
+      return;
+    }
+    double minX = Double.POSITIVE_INFINITY;
+    double minY = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY;
+    double maxY = Double.NEGATIVE_INFINITY;
+    for (int v = firstVertex; v < endVertex; v++) {
+      double x = this.coords[v * 2];
+      double y = this.coords[v * 2 + 1];
+      minX = Math.min(minX, x);
+      minY = Math.min(minY, y);
+      maxX = Math.max(maxX, x);
+      maxY = Math.max(maxY, y);
+    }
+    envelopes[i * 4] = minX;
+    envelopes[i * 4 + 1] = minY;
+    envelopes[i * 4 + 2] = maxX;
+    envelopes[i * 4 + 3] = maxY;
+  }
+
+  /**
+   * Computes the envelope of every feature, in feature order. See {@link #envelope}.
+   *
+   * @return minX, minY, maxX, maxY of each feature, four doubles per feature.
+   */
+  public double[] envelopes() {
+    double[] envelopes = new double[this.featureCount() * 4];
+    for (int f = 0; f < this.featureCount(); f++) {
+      this.envelope(f, envelopes, f);
+    }
+    return envelopes;
+  }
+
+  /**
+   * Exact test of whether any polygon of a feature shares a point with a rectangle.
+   *
+   * @param feature the feature id.
+   * @param minX minimum x (longitude) of the rectangle.
+   * @param minY minimum y (latitude) of the rectangle.
+   * @param maxX maximum x (longitude) of the rectangle.
+   * @param maxY maximum y (latitude) of the rectangle.
+   * @return true if the feature intersects the rectangle.
+   */
+  public boolean intersectsRect(int feature, double minX, double minY, double maxX, double maxY) {
+    for (int p = this.featureOffsets[feature]; p < this.featureOffsets[feature + 1]; p++) {
+      if (GeometryUtilities.polygonIntersectsRect(
+          this.coords,
+          this.ringOffsets,
+          this.polygonOffsets[p],
+          this.polygonOffsets[p + 1],
+          minX,
+          minY,
+          maxX,
+          maxY)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Exact test of whether a point lies inside any polygon of a feature, outside of its holes.
+   *
+   * @param feature the feature id.
+   * @param x the point's x (longitude).
+   * @param y the point's y (latitude).
+   * @return true if the feature contains the point.
+   */
+  public boolean containsPoint(int feature, double x, double y) {
+    for (int p = this.featureOffsets[feature]; p < this.featureOffsets[feature + 1]; p++) {
+      int firstRing = this.polygonOffsets[p];
+      int endRing = this.polygonOffsets[p + 1];
+      if (GeometryUtilities.pointInPolygon(
+          this.coords, this.ringOffsets, firstRing, endRing, x, y)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Builds a GeometryStore one feature, polygon, ring and vertex at a time, growing flat arrays as
+   * it goes. Calls must nest: a ring belongs to the last polygon begun, and a polygon to the last
+   * feature begun.
+   */
+  public static class Builder {
+    private double[] coords = new double[1024];
+    private int[] ringOffsets = new int[64];
+    private int[] polygonOffsets = new int[64];
+    private int[] featureOffsets = new int[64];
+    private int vertices = 0;
+    private int rings = 0;
+    private int polygons = 0;
+    private int features = 0;
+
+    /** Starts a new feature, with no polygons yet. */
+    public void beginFeature() {
+      if (this.features + 1 >= this.featureOffsets.length) {
+        this.featureOffsets = Arrays.copyOf(this.featureOffsets, this.featureOffsets.length * 2);
+      }
+      this.featureOffsets[this.features++] = this.polygons;
+    }
+
+    /** Starts a new polygon in the current feature, with no rings yet. */
+    public void beginPolygon() {
+      if (this.polygons + 1 >= this.polygonOffsets.length) {
+        this.polygonOffsets = Arrays.copyOf(this.polygonOffsets, this.polygonOffsets.length * 2);
+      }
+      this.polygonOffsets[this.polygons++] = this.rings;
+    }
+
+    /** Starts a new ring in the current polygon, with no vertices yet. */
+    public void beginRing() {
+      if (this.rings + 1 >= this.ringOffsets.length) {
+        this.ringOffsets = Arrays.copyOf(this.ringOffsets, this.ringOffsets.length * 2);
+      }
+      this.ringOffsets[this.rings++] = this.vertices;
+    }
+
+    /**
+     * Appends a vertex to the current ring.
+     *
+     * @param x the vertex's x (longitude).
+     * @param y the vertex's y (latitude).
+     */
+    public void addVertex(double x, double y) {
+      if ((this.vertices + 1) * 2 > this.coords.length) {
+        this.coords = Arrays.copyOf(this.coords, this.coords.length * 2);
+      }
+      this.coords[this.vertices * 2] = x;
+      this.coords[this.vertices * 2 + 1] = y;
+      this.vertices++;
+    }
+
+    /**
+     * Trims the arrays to size and closes every offset array with its trailing end offset.
+     *
+     * @return the finished store.
+     */
+    public GeometryStore build() {
+      int[] ringArray = Arrays.copyOf(this.ringOffsets, this.rings + 1);
+      ringArray[this.rings] = this.vertices;
+      int[] polygonArray = Arrays.copyOf(this.polygonOffsets, this.polygons + 1);
+      polygonArray[this.polygons] = this.rings;
+      int[] featureArray = Arrays.copyOf(this.featureOffsets, this.features + 1);
+      featureArray[this.features] = this.polygons;
+      return new GeometryStore(
+          Arrays.copyOf(this.coords, this.vertices * 2), ringArray, polygonArray, featureArray);
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package edu.brown.cs.student.main.server.handlers.redlining;
+
+/**
+ * Static helpers for exact geometric tests on polygons stored as flat coordinate arrays. A
+ * polygon's vertices are interleaved as x0, y0, x1, y1, ... in a double array; ring r of the
+ * polygon spans vertices [ringOffsets[r], ringOffsets[r + 1]). The first ring of a polygon is its
+ * outer boundary and any others are holes.
+ */
+public class GeometryUtilities {
+
+  /**
+   * Checks whether a polygon (outer ring plus holes) and an axis-aligned rectangle share any point.
+   * If no ring edge touches the rectangle, the two can only overlap when the rectangle lies
+   * entirely inside the polygon, so a single corner test settles it.
+   *
+   * @param coords the interleaved vertex coordinates.
+   * @param ringOffsets the vertex offset of each ring, plus one trailing end offset.
+   * @param firstRing the polygon's first (outer) ring.
+   * @param endRing one past the polygon's last ring.
+   * @param minX minimum x (longitude) of the rectangle.
+   * @param minY minimum y (latitude) of the rectangle.
+   * @param maxX maximum x (longitude) of the rectangle.
+   * @param maxY maximum y (latitude) of the rectangle.
+   * @return true if the polygon and rectangle intersect.
+   */
+  public static boolean polygonIntersectsRect(
+      double[] coords,
+      int[] ringOffsets,
+      int firstRing,
+      int endRing,
+      double minX,
+      double minY,
+      double maxX,
+      double maxY) {
+    for (int r = firstRing; r < endRing; r++) {
+      int start = ringOffsets[r];
+      int end = ringOffsets[r + 1];
+      for (int v = start; v < end; v++) {
+        int next = (v + 1 < end) ? v + 1 : start;
+        if (segmentIntersectsRect(
+            coords[v * 2],
+            coords[v * 2 + 1],
+            coords[next * 2],
+            coords[next * 2 + 1],
+            minX,
+            minY,
+            maxX,
+            maxY)) {
+          return true;
+        }
+      }
+    }
+    return pointInPolygon(coords, ringOffsets, firstRing, endRing, minX, minY);
+  }
+
+  /**
+   * Even-odd ray casting test of a point against every ring of a polygon, so points inside a hole
+   * count as outside.
+   *
+   * @param coords the interleaved vertex coordinates.
+   * @param ringOffsets the vertex offset of each ring, plus one trailing end offset.
+   * @param firstRing the polygon's first (outer) ring.
+   * @param endRing one past the polygon's last ring.
+   * @param x the point's x (longitude).
+   * @param y the point's y (latitude).
+   * @return true if the point is inside the polygon.
+   */
+  public static boolean pointInPolygon(
+      double[] coords, int[] ringOffsets, int firstRing, int endRing, double x, double y) {
+    boolean inside = false;
+    for (int r = firstRing; r < endRing; r++) {
+      int start = ringOffsets[r];
+      int end = ringOffsets[r + 1];
+      for (int v = start, prev = end - 1; v < end; prev = v++) {
+        double xi = coords[v * 2];
+        double yi = coords[v * 2 + 1];
+        double xj = coords[prev * 2];
+        double yj = coords[prev * 2 + 1];
+        if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+          inside = !inside;
+        }
+      }
+    }
+    return inside;
+  }
+
+  /** Liang-Barsky clipping test: does the segment from (x0, y0) to (x1, y1) touch the rectangle? */
+  private static boolean segmentIntersectsRect(
+      double x0,
+      double y0,
+      double x1,
+      double y1,
+      double minX,
+      double minY,
+      double maxX,
+      double maxY) {
+    double dx = x1 - x0;
+    double dy = y1 - y0;
+    double[] p = {-dx, dx, -dy, dy};
+    double[] q = {x0 - minX, maxX - x0, y0 - minY, maxY - y0};
+    double t0 = 0;
+    double t1 = 1;
+    for (int i = 0; i < 4; i++) {
+      if (p[i] == 0) {
+        if (q[i] < 0) {
+          return false;
+        }
+      } else {
+        double t = q[i] / p[i];
+        if (p[i] < 0) {
+          t0 = Math.max(t0, t);
+        } else {
+          t1 = Math.min(t1, t);
+        }
+        if (t0 > t1) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+}
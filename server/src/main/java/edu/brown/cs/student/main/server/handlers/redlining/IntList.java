@@ -0,0 +1,58 @@
+package edu.brown.cs.student.main.server.handlers.redlining;
+
+import java.util.Arrays;
+
+/**
+ * A minimal growable list of primitive ints, used to collect feature ids without boxing them into
+ * Integer objects.
+ */
+public class IntList {
+  private int[] values;
+  private int size;
+
+  /** Creates an empty list with a small initial capacity. */
+  public IntList() {
+    this.values = new int[16];
+    this.size = 0;
+  }
+
+  /**
+   * Appends a value to the end of the list.
+   *
+   * @param value the value to add.
+   */
+  public void add(int value) {
+    if (this.size == this.values.length) {
+      this.values = Arrays.copyOf(this.values, this.size * 2);
+    }
+    this.values[this.size++] = value;
+  }
+
+  /**
+   * Returns the value at the given position.
+   *
+   * @param index the position to read.
+   * @return the value at that position.
+   */
+  public int get(int index) {
+    return this.values[index];
+  }
+
+  /**
+   * Returns the number of values in the list.
+   *
+   * @return the size of the list.
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Copies the values into an array of exactly the list's size.
+   *
+   * @return the values as an int array.
+   */
+  public int[] toArray() {
+    return Arrays.copyOf(this.values, this.size);
+  }
+}
@@ -0,0 +1,411 @@
+package edu.brown.cs.student.main.server.handlers.redlining;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An inverted index over the area description text of every feature, built once when the dataset
+ * loads. It keeps three kinds of postings lists, each a sorted array of feature ids:
+ *
+ * <ul>
+ *   <li>token postings, from each lowercased word to the features using it, for whole word queries;
+ *   <li>trigram postings, from each lowercased three character run to the features containing it,
+ *       for substring queries. A feature containing every trigram of a term is only a candidate, so
+ *       candidates are verified against their own description values, never the whole dataset;
+ *   <li>short postings, from each lowercased one and two character run to the features containing
+ *       it, which answer terms too short to have a trigram exactly, with nothing to verify. There
+ *       is at most one list per pair of characters the descriptions use.
+ * </ul>
+ *
+ * <p>All matching is case-insensitive. Queries with several terms can require all of them (AND) or
+ * any of them (OR). Verifying a large set of candidates runs on a {@link ParallelFilter}.
+ */
+public class KeywordIndex {
+  private static final int[] NO_IDS = new int[0];
+
+  private final List<Map<String, String>> descriptions; // Feature id -> description values.
+  private final Map<String, int[]> tokenPostings;
+  private final Map<String, int[]> trigramPostings;
+  private final Map<String, int[]> shortPostings; // One and two character runs.
+  private final int[] describedIds; // Every feature with at least one description value.
+  private volatile ParallelFilter parallelFilter = ParallelFilter.DEFAULT;
+
+  /**
+   * Builds the index over the given descriptions. The list is kept by reference to verify substring
+   * candidates, so it must not be modified afterwards.
+   *
+   * @param descriptions each feature's area description data, indexed by feature id; entries may be
+   *     null.
+   */
+  public KeywordIndex(List<Map<String, String>> descriptions) {
+    this.descriptions = descriptions;
+    Map<String, IntList> tokens = new HashMap<>();
+    Map<String, IntList> trigrams = new HashMap<>();
+    Map<String, IntList> shortRuns = new HashMap<>();
+    IntList described = new IntList();
+
+    for (int id = 0; id < descriptions.size(); id++) {
+      Map<String, String> description = descriptions.get(id);
+      if (description == null || description.isEmpty()) {
+        continue;
+      }
+      described.add(id);
+      for (String value : description.values()) {
+        if (value == null) {
+          continue;
+        }
+        String lower = value.toLowerCase(Locale.ROOT);
+        for (String token : tokenize(lower)) {
+          addPosting(tokens, token, id);
+        }
+        for (int i = 0; i < lower.length(); i++) {
+          addPosting(shortRuns, lower.substring(i, i + 1), id);
+          if (i + 2 <= lower.length()) {
+            addPosting(shortRuns, lower.substring(i, i + 2), id);
+          }
+          if (i + 3 <= lower.length()) {
+            addPosting(trigrams, lower.substring(i, i + 3), id);
+          }
+        }
+      }
+    }
+
+    this.tokenPostings = freeze(tokens);
+    this.trigramPostings = freeze(trigrams);
+    this.shortPostings = freeze(shortRuns);
+    this.describedIds = described.toArray();
+  }
+
+  /** Restores an index from the postings written by {@link #writeTo}. */
+  private KeywordIndex(
+      List<Map<String, String>> descriptions,
+      Map<String, int[]> tokenPostings,
+      Map<String, int[]> trigramPostings,
+      Map<String, int[]> shortPostings,
+      int[] describedIds) {
+    this.descriptions = descriptions;
+    this.tokenPostings = tokenPostings;
+    this.trigramPostings = trigramPostings;
+    this.shortPostings = shortPostings;
+    this.describedIds = describedIds;
+  }
+
+  /**
+   * Sets the filter large candidate sets are verified on.
+   *
+   * @param parallelFilter the filter to use.
+   */
+  public void useParallelFilter(ParallelFilter parallelFilter) {
+    this.parallelFilter = parallelFilter;
+  }
+
+  /**
+   * Writes every postings list to a snapshot, so the index can be restored without re-tokenizing
+   * the descriptions.
+   *
+   * @param writer the snapshot to write to.
+   * @throws IOException if writing fails.
+   */
+  public void writeTo(SnapshotWriter writer) throws IOException {
+    writePostings(writer, this.tokenPostings);
+    writePostings(writer, this.trigramPostings);
+    writePostings(writer, this.shortPostings);
+    writer.writeIntArray(this.describedIds);
+  }
+
+  /**
+   * Restores an index written by {@link #writeTo}.
+   *
+   * @param reader the snapshot to read from.
+   * @param descriptions the descriptions the index was built over, used to verify candidates.
+   * @return the restored index.
+   */
+  public static KeywordIndex readFrom(
+      SnapshotReader reader, List<Map<String, String>> descriptions) {
+    Map<String, int[]> tokenPostings = readPostings(reader);
+    Map<String, int[]> trigramPostings = readPostings(reader);
+    Map<String, int[]> shortPostings = readPostings(reader);
+    return new KeywordIndex(
+        descriptions, tokenPostings, trigramPostings, shortPostings, reader.readIntArray());
+  }
+
+  /**
+   * Finds the features matching a keyword query.
+   *
+   * @param terms the query terms; matched case-insensitively.
+   * @param matchAll true to require every term (AND), false to require any term (OR).
+   * @param wholeTokens true to match terms against whole words, false to match them anywhere in a
+   *     description value.
+   * @return the ids of the matching features, sorted.
+   */
+  public int[] search(List<String> terms, boolean matchAll, boolean wholeTokens) {
+    if (terms.isEmpty()) {
+      // Every string contains the empty string, so an empty query matches everything described.
+      return this.describedIds.clone();
+    }
+    int[] result = null;
+    for (String term : terms) {
+      String lower = term.toLowerCase(Locale.ROOT);
+      int[] matches = wholeTokens ? this.tokenMatches(lower) : this.substringMatches(lower);
+      if (result == null) {
+        result = matches;
+      } else {
+        result = matchAll ? intersect(result, matches) : union(result, matches);
+      }
+      if (matchAll && result.length == 0) {
+        break;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Estimates how many features a keyword query matches, from postings list lengths alone, without
+   * intersecting lists or verifying candidates. The estimate is never below the true count.
+   *
+   * @param terms the query terms; matched case-insensitively.
+   * @param matchAll true to require every term (AND), false to require any term (OR).
+   * @param wholeTokens true to match terms against whole words, false to match them as substrings.
+   * @return an upper bound on the number of matching features.
+   */
+  public long estimate(List<String> terms, boolean matchAll, boolean wholeTokens) {
+    if (terms.isEmpty()) {
+      return this.describedIds.length;
+    }
+    long total = matchAll ? Long.MAX_VALUE : 0;
+    for (String term : terms) {
+      String lower = term.toLowerCase(Locale.ROOT);
+      long bound = this.describedIds.length;
+      if (wholeTokens) {
+        for (String token : tokenize(lower)) {
+          bound = Math.min(bound, this.tokenPostings.getOrDefault(token, NO_IDS).length);
+        }
+      } else if (lower.length() < 3) {
+        bound = this.shortMatches(lower).length;
+      } else {
+        for (int i = 0; i + 3 <= lower.length(); i++) {
+          bound = Math.min(bound, this.trigram(lower, i).length);
+        }
+      }
+      total = matchAll ? Math.min(total, bound) : total + bound;
+    }
+    return Math.min(total, this.describedIds.length);
+  }
+
+  /**
+   * Keeps the candidates matching a keyword query, checking each candidate's own description
+   * instead of reading postings lists. Worth it when there are fewer candidates than postings.
+   *
+   * @param candidates the ids to check, sorted.
+   * @param terms the query terms; matched case-insensitively.
+   * @param matchAll true to require every term (AND), false to require any term (OR).
+   * @param wholeTokens true to match terms against whole words, false to match them anywhere in a
+   *     description value.
+   * @return the matching candidates, sorted.
+   */
+  public int[] filter(int[] candidates, List<String> terms, boolean matchAll, boolean wholeTokens) {
+    List<String> lowerTerms = new ArrayList<>(terms.size());
+    for (String term : terms) {
+      lowerTerms.add(term.toLowerCase(Locale.ROOT));
+    }
+    return this.parallelFilter.filter(
+        candidates,
+        id -> {
+          Map<String, String> description = this.descriptions.get(id);
+          if (description == null || description.isEmpty()) {
+            return false;
+          }
+          boolean matched = matchAll;
+          for (String lower : lowerTerms) {
+            boolean termMatched =
+                wholeTokens ? hasTokens(description, lower) : hasSubstring(description, lower);
+            if (termMatched != matchAll) {
+              matched = termMatched;
+              break;
+            }
+          }
+          return matched || lowerTerms.isEmpty();
+        });
+  }
+
+  /** Whether a description has every word of the (already lowercased) term. */
+  private static boolean hasTokens(Map<String, String> description, String lower) {
+    List<String> wanted = tokenize(lower);
+    List<String> present = new ArrayList<>();
+    for (String value : description.values()) {
+      if (value != null) {
+        present.addAll(tokenize(value.toLowerCase(Locale.ROOT)));
+      }
+    }
+    return present.containsAll(wanted);
+  }
+
+  /** Whether a description value contains the (already lowercased) term. */
+  private static boolean hasSubstring(Map<String, String> description, String lower) {
+    for (String value : description.values()) {
+      if (value != null && containsIgnoreCase(value, lower)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Features whose description has every word of the (already lowercased) term. */
+  private int[] tokenMatches(String lower) {
+    List<String> tokens = tokenize(lower);
+    if (tokens.isEmpty()) {
+      return this.describedIds.clone();
+    }
+    int[] result = this.tokenPostings.getOrDefault(tokens.get(0), NO_IDS);
+    for (int i = 1; i < tokens.size(); i++) {
+      result = intersect(result, this.tokenPostings.getOrDefault(tokens.get(i), NO_IDS));
+    }
+    return result;
+  }
+
+  /** Features with a description value containing the (already lowercased) term. */
+  private int[] substringMatches(String lower) {
+    if (lower.length() < 3) {
+      // The short postings are exact, so there is nothing to verify.
+      return this.shortMatches(lower).clone();
+    }
+    int[] candidates = this.trigram(lower, 0);
+    for (int i = 1; i + 3 <= lower.length() && candidates.length > 0; i++) {
+      candidates = intersect(candidates, this.trigram(lower, i));
+    }
+
+    return this.parallelFilter.filter(
+        candidates, id -> hasSubstring(this.descriptions.get(id), lower));
+  }
+
+  /** Features with a description value containing the (already lowercased) term of 0 to 2 chars. */
+  private int[] shortMatches(String lower) {
+    // Every described feature contains the empty string.
+    return lower.isEmpty() ? this.describedIds : this.shortPostings.getOrDefault(lower, NO_IDS);
+  }
+
+  /** The postings of the trigram starting at position i of the term. */
+  private int[] trigram(String lower, int i) {
+    return this.trigramPostings.getOrDefault(lower.substring(i, i + 3), NO_IDS);
+  }
+
+  /**
+   * Splits lowercased text into words: maximal runs of letters and digits.
+   *
+   * @param lower the text to split.
+   * @return the words, in order, possibly repeated.
+   */
+  public static List<String> tokenize(String lower) {
+    List<String> tokens = new ArrayList<>();
+    int start = -1;
+    for (int i = 0; i <= lower.length(); i++) {
+      boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+      if (wordChar && start < 0) {
+        start = i;
+      } else if (!wordChar && start >= 0) {
+        tokens.add(lower.substring(start, i));
+        start = -1;
+      }
+    }
+    return tokens;
+  }
+
+  /**
+   * Intersects two sorted id arrays.
+   *
+   * @param a the first sorted array.
+   * @param b the second sorted array.
+   * @return the sorted ids present in both.
+   */
+  public static int[] intersect(int[] a, int[] b) {
+    IntList out = new IntList();
+    int i = 0;
+    int j = 0;
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) {
+        i++;
+      } else if (a[i] > b[j]) {
+        j++;
+      } else {
+        out.add(a[i]);
+        i++;
+        j++;
+      }
+    }
+    return out.toArray();
+  }
+
+  /**
+   * Merges two sorted id arrays.
+   *
+   * @param a the first sorted array.
+   * @param b the second sorted array.
+   * @return the sorted ids present in either, without duplicates.
+   */
+  public static int[] union(int[] a, int[] b) {
+    IntList out = new IntList();
+    int i = 0;
+    int j = 0;
+    while (i < a.length || j < b.length) {
+      if (j == b.length || (i < a.length && a[i] < b[j])) {
+        out.add(a[i++]);
+      } else if (i == a.length || b[j] < a[i]) {
+        out.add(b[j++]);
+      } else {
+        out.add(a[i]);
+        i++;
+        j++;
+      }
+    }
+    return out.toArray();
+  }
+
+  /** Case-insensitive contains, without allocating a lowercased copy of the text. */
+  private static boolean containsIgnoreCase(String text, String lowerNeedle) {
+    int last = text.length() - lowerNeedle.length();
+    for (int i = 0; i <= last; i++) {
+      if (text.regionMatches(true, i, lowerNeedle, 0, lowerNeedle.length())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Appends an id to a term's postings, skipping repeats; ids arrive in ascending order. */
+  private static void addPosting(Map<String, IntList> postings, String term, int id) {
+    IntList list = postings.computeIfAbsent(term, t -> new IntList());
+    if (list.size() == 0 || list.get(list.size() - 1) != id) {
+      list.add(id);
+    }
+  }
+
+  private static void writePostings(SnapshotWriter writer, Map<String, int[]> postings)
+      throws IOException {
+    writer.writeInt(postings.size());
+    for (Map.Entry<String, int[]> entry : postings.entrySet()) {
+      writer.writeString(entry.getKey());
+      writer.writeIntArray(entry.getValue());
+    }
+  }
+
+  private static Map<String, int[]> readPostings(SnapshotReader reader) {
+    int size = reader.readInt();
+    Map<String, int[]> postings = new HashMap<>(size * 2);
+    for (int i = 0; i < size; i++) {
+      postings.put(reader.readString(), reader.readIntArray());
+    }
+    return postings;
+  }
+
+  private static Map<String, int[]> freeze(Map<String, IntList> postings) {
+    Map<String, int[]> frozen = new HashMap<>(postings.size() * 2);
+    for (Map.Entry<String, IntList> entry : postings.entrySet()) {
+      frozen.put(entry.getKey(), entry.getValue().toArray());
+    }
+    return frozen;
+  }
+}
@@ -0,0 +1,122 @@
+package edu.brown.cs.student.main.server.handlers.redlining;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Tests a predicate against a list of feature ids, in parallel when the list is large. The ids are
+ * split into chunks that are tested on a dedicated ForkJoinPool, and the matches of each chunk are
+ * concatenated in chunk order, so the result is in the same order as the input just as if it had
+ * been filtered sequentially.
+ *
+ * <p>The pool is separate from the common pool and from Jetty's request threads, and its
+ * parallelism is bounded, so one heavy scan can never take every core away from the threads serving
+ * other requests. The request thread waits for the result. Lists shorter than the threshold are
+ * filtered on the calling thread, since splitting them costs more than it saves.
+ */
+public class ParallelFilter {
+  /** Lists with fewer ids than this are filtered on the calling thread. */
+  public static final int DEFAULT_THRESHOLD = 4096;
+
+  /** The filter used by datasets unless given another: half the cores, at the default threshold. */
+  public static final ParallelFilter DEFAULT =
+      new ParallelFilter(
+          Math.max(1, Runtime.getRuntime().availableProcessors() / 2), DEFAULT_THRESHOLD);
+
+  // Splitting into a few chunks per worker lets idle workers steal from busy ones.
+  private static final int CHUNKS_PER_WORKER = 4;
+
+  private final ForkJoinPool pool;
+  private final int parallelism;
+  private final int threshold;
+
+  /** Tests one feature. */
+  @FunctionalInterface
+  public interface IdPredicate {
+    boolean test(int id);
+  }
+
+  /**
+   * @param parallelism the most threads to test ids on at once; 1 to always filter sequentially.
+   * @param threshold the fewest ids worth filtering in parallel.
+   */
+  public ParallelFilter(int parallelism, int threshold) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1.");
+    }
+    this.parallelism = parallelism;
+    this.threshold = threshold;
+    this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+  }
+
+  /**
+   * Keeps the ids the predicate accepts. The predicate may be called from several threads at once,
+   * so it must only read shared state.
+   *
+   * @param ids the ids to test.
+   * @param predicate the test.
+   * @return the accepted ids, in their original order.
+   */
+  public int[] filter(int[] ids, IdPredicate predicate) {
+    if (this.pool == null || ids.length < this.threshold) {
+      return filterRange(ids, 0, ids.length, predicate);
+    }
+    int chunks = this.parallelism * CHUNKS_PER_WORKER;
+    int chunkSize = Math.max(1, Math.max(this.threshold / CHUNKS_PER_WORKER, ids.length / chunks));
+    return this.pool.invoke(new Chunk(ids, 0, ids.length, predicate, chunkSize));
+  }
+
+  /**
+   * Returns the most threads this filter tests ids on at once.
+   *
+   * @return the parallelism.
+   */
+  public int parallelism() {
+    return this.parallelism;
+  }
+
+  private static int[] filterRange(int[] ids, int start, int end, IdPredicate predicate) {
+    IntList kept = new IntList();
+    for (int i = start; i < end; i++) {
+      if (predicate.test(ids[i])) {
+        kept.add(ids[i]);
+      }
+    }
+    return kept.toArray();
+  }
+
+  /** Filters ids[start, end), splitting in half until the range is one chunk. */
+  private static class Chunk extends RecursiveTask<int[]> {
+    private final int[] ids;
+    private final int start;
+    private final int end;
+    private final IdPredicate predicate;
+    private final int chunkSize;
+
+    Chunk(int[] ids, int start, int end, IdPredicate predicate, int chunkSize) {
+      this.ids = ids;
+      this.start = start;
+      this.end = end;
+      this.predicate = predicate;
+      this.chunkSize = chunkSize;
+    }
+
+    @Override
+    protected int[] compute() {
+      if (this.end - this.start <= this.chunkSize) {
+        return filterRange(this.ids, this.start, this.end, this.predicate);
+      }
+      int middle = (this.start + this.end) >>> 1;
+      Chunk left = new Chunk(this.ids, this.start, middle, this.predicate, this.chunkSize);
+      left.fork();
+      int[] right = new Chunk(this.ids, middle, this.end, this.predicate, this.chunkSize).compute();
+      int[] leftMatches = left.join();
+
+      // Left before right keeps the original order.
+      int[] merged = new int[leftMatches.length + right.length];
+      System.arraycopy(leftMatches, 0, merged, 0, leftMatches.length);
+      System.arraycopy(right, 0, merged, leftMatches.length, right.length);
+      return merged;
+    }
+  }
+}
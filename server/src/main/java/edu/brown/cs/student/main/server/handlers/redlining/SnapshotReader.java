@@ -0,0 +1,90 @@
+package edu.brown.cs.student.main.server.handlers.redlining;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the sections written by a {@link SnapshotWriter} back out of a ByteBuffer, normally a
+ * memory-mapped snapshot file. Arrays are copied out with bulk buffer views rather than element by
+ * element.
+ */
+public class SnapshotReader {
+  private final ByteBuffer buffer;
+
+  /**
+   * Creates a reader positioned at the buffer's current position.
+   *
+   * @param buffer the big-endian buffer to read from.
+   */
+  public SnapshotReader(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  /**
+   * Reads a single int.
+   *
+   * @return the value read.
+   */
+  public int readInt() {
+    return this.buffer.getInt();
+  }
+
+  /**
+   * Reads a single long.
+   *
+   * @return the value read.
+   */
+  public long readLong() {
+    return this.buffer.getLong();
+  }
+
+  /**
+   * Reads a length-prefixed int array.
+   *
+   * @return the values read.
+   */
+  public int[] readIntArray() {
+    int[] values = new int[this.buffer.getInt()];
+    this.buffer.asIntBuffer().get(values);
+    this.buffer.position(this.buffer.position() + values.length * Integer.BYTES);
+    return values;
+  }
+
+  /**
+   * Reads a length-prefixed double array.
+   *
+   * @return the values read.
+   */
+  public double[] readDoubleArray() {
+    double[] values = new double[this.buffer.getInt()];
+    this.buffer.asDoubleBuffer().get(values);
+    this.buffer.position(this.buffer.position() + values.length * Double.BYTES);
+    return values;
+  }
+
+  /**
+   * Reads a length-prefixed byte array.
+   *
+   * @return the bytes read.
+   */
+  public byte[] readBytes() {
+    byte[] values = new byte[this.buffer.getInt()];
+    this.buffer.get(values);
+    return values;
+  }
+
+  /**
+   * Reads a length-prefixed UTF-8 string, or null if the length is -1.
+   *
+   * @return the string read, possibly null.
+   */
+  public String readString() {
+    int length = this.buffer.getInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    this.buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,107 @@
+package edu.brown.cs.student.main.server.handlers.redlining;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the sections of a binary dataset snapshot. Everything is big-endian, and arrays are
+ * written as a length followed by their elements, so a {@link SnapshotReader} can copy them back
+ * out of a memory-mapped file in bulk.
+ */
+public class SnapshotWriter implements Closeable {
+  private final DataOutputStream out;
+
+  /**
+   * Creates a writer on top of an output stream, which it buffers.
+   *
+   * @param out the stream to write to.
+   */
+  public SnapshotWriter(OutputStream out) {
+    this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+  }
+
+  /**
+   * Writes a single int.
+   *
+   * @param value the value to write.
+   * @throws IOException if the stream fails.
+   */
+  public void writeInt(int value) throws IOException {
+    this.out.writeInt(value);
+  }
+
+  /**
+   * Writes a single long.
+   *
+   * @param value the value to write.
+   * @throws IOException if the stream fails.
+   */
+  public void writeLong(long value) throws IOException {
+    this.out.writeLong(value);
+  }
+
+  /**
+   * Writes an int array, prefixed by its length.
+   *
+   * @param values the values to write.
+   * @throws IOException if the stream fails.
+   */
+  public void writeIntArray(int[] values) throws IOException {
+    this.out.writeInt(values.length);
+    for (int value : values) {
+      this.out.writeInt(value);
+    }
+  }
+
+  /**
+   * Writes a double array, prefixed by its length.
+   *
+   * @param values the values to write.
+   * @throws IOException if the stream fails.
+   */
+  public void writeDoubleArray(double[] values) throws IOException {
+    this.out.writeInt(values.length);
+    for (double value : values) {
+      this.out.writeDouble(value);
+    }
+  }
+
+  /**
+   * Writes a byte array, prefixed by its length.
+   *
+   * @param values the bytes to write.
+   * @throws IOException if the stream fails.
+   */
+  public void writeBytes(byte[] values) throws IOException {
+    this.out.writeInt(values.length);
+    this.out.write(values);
+  }
+
+  /**
+   * Writes a string as UTF-8 bytes prefixed by their length, or a length of -1 for null.
+   *
+   * @param value the string to write, possibly null.
+   * @throws IOException if the stream fails.
+   */
+  public void writeString(String value) throws IOException {
+    if (value == null) {
+      this.out.writeInt(-1);
+    } else {
+      this.writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Flushes and closes the underlying stream.
+   *
+   * @throws IOException if the stream fails.
+   */
+  @Override
+  public void close() throws IOException {
+    this.out.close();
+  }
+}
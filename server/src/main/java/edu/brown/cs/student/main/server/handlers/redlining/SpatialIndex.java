@@ -0,0 +1,300 @@
+package edu.brown.cs.student.main.server.handlers.redlining;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A read-only R-tree over axis-aligned rectangles, bulk loaded once with Sort-Tile-Recursive (STR)
+ * packing. Every entry is identified by an int id (the feature's position in the dataset), and a
+ * bounding box query returns the ids of every entry whose rectangle intersects the box, in
+ * ascending order.
+ *
+ * <p>The tree is stored in flat primitive arrays rather than node objects, so it can be built once
+ * at load time and shared between request threads without any locking.
+ */
+public class SpatialIndex {
+  public static final int DEFAULT_NODE_CAPACITY = 16;
+
+  private final int[] entryIds; // Entry ids in packed (STR) order.
+  private final double[] entryBounds; // minX, minY, maxX, maxY per entry, in packed order.
+  private final double[] nodeBounds; // minX, minY, maxX, maxY per node.
+  private final int[] nodeStart; // First entry (leaves) or first childRefs slot (internal nodes).
+  private final int[] nodeCount; // Number of entries or children under each node.
+  private final int[] childRefs; // Child node indices for internal nodes.
+  private final int leafCount; // Nodes [0, leafCount) are leaves.
+  private final int root; // Index of the root node, or -1 if the tree is empty.
+
+  /**
+   * Bulk loads the tree from parallel arrays of ids and bounds.
+   *
+   * @param ids the id of each entry.
+   * @param bounds minX, minY, maxX, maxY of each entry, four doubles per id.
+   * @param nodeCapacity the maximum number of children per node.
+   */
+  public SpatialIndex(int[] ids, double[] bounds, int nodeCapacity) {
+    if (bounds.length != ids.length * 4) {
+      throw new IllegalArgumentException("Expected four bounds per id.");
+    }
+    if (nodeCapacity < 2) {
+      throw new IllegalArgumentException("Node capacity must be at least 2.");
+    }
+    int n = ids.length;
+
+    // Pack the entries themselves, so every leaf covers a contiguous run of them.
+    int[] order = strOrder(bounds, n, nodeCapacity);
+    this.entryIds = new int[n];
+    this.entryBounds = new double[n * 4];
+    for (int i = 0; i < n; i++) {
+      this.entryIds[i] = ids[order[i]];
+      System.arraycopy(bounds, order[i] * 4, this.entryBounds, i * 4, 4);
+    }
+
+    // Count the nodes of every level up front so the arrays are sized exactly once.
+    int maxNodes = 1;
+    for (int level = ceilDiv(n, nodeCapacity); level > 1; level = ceilDiv(level, nodeCapacity)) {
+      maxNodes += level;
+    }
+    double[] nb = new double[maxNodes * 4];
+    int[] ns = new int[maxNodes];
+    int[] nc = new int[maxNodes];
+    int[] refs = new int[maxNodes];
+    int nodes = 0;
+    int refCount = 0;
+
+    // Leaves group consecutive runs of packed entries.
+    for (int start = 0; start < n; start += nodeCapacity) {
+      int count = Math.min(nodeCapacity, n - start);
+      ns[nodes] = start;
+      nc[nodes] = count;
+      union(this.entryBounds, start, count, nb, nodes);
+      nodes++;
+    }
+    this.leafCount = nodes;
+
+    // Internal levels STR-pack the level below until a single root is left.
+    int levelStart = 0;
+    int levelEnd = nodes;
+    while (levelEnd - levelStart > 1) {
+      int levelSize = levelEnd - levelStart;
+      double[] levelBounds = Arrays.copyOfRange(nb, levelStart * 4, levelEnd * 4);
+      int[] levelOrder = strOrder(levelBounds, levelSize, nodeCapacity);
+      for (int start = 0; start < levelSize; start += nodeCapacity) {
+        int count = Math.min(nodeCapacity, levelSize - start);
+        ns[nodes] = refCount;
+        nc[nodes] = count;
+        nb[nodes * 4] = Double.POSITIVE_INFINITY;
+        nb[nodes * 4 + 1] = Double.POSITIVE_INFINITY;
+        nb[nodes * 4 + 2] = Double.NEGATIVE_INFINITY;
+        nb[nodes * 4 + 3] = Double.NEGATIVE_INFINITY;
+        for (int i = start; i < start + count; i++) {
+          int child = levelStart + levelOrder[i];
+          refs[refCount++] = child;
+          expand(nb, child, nb, nodes);
+        }
+        nodes++;
+      }
+      levelStart = levelEnd;
+      levelEnd = nodes;
+    }
+
+    this.nodeBounds = Arrays.copyOf(nb, nodes * 4);
+    this.nodeStart = Arrays.copyOf(ns, nodes);
+    this.nodeCount = Arrays.copyOf(nc, nodes);
+    this.childRefs = Arrays.copyOf(refs, refCount);
+    this.root = nodes - 1;
+  }
+
+  /** Restores a tree from the arrays written by {@link #writeTo}. */
+  private SpatialIndex(
+      int[] entryIds,
+      double[] entryBounds,
+      double[] nodeBounds,
+      int[] nodeStart,
+      int[] nodeCount,
+      int[] childRefs,
+      int leafCount) {
+    this.entryIds = entryIds;
+    this.entryBounds = entryBounds;
+    this.nodeBounds = nodeBounds;
+    this.nodeStart = nodeStart;
+    this.nodeCount = nodeCount;
+    this.childRefs = childRefs;
+    this.leafCount = leafCount;
+    this.root = nodeStart.length - 1;
+  }
+
+  /**
+   * Writes the packed tree to a snapshot, so it can be restored without repacking.
+   *
+   * @param writer the snapshot to write to.
+   * @throws IOException if writing fails.
+   */
+  public void writeTo(SnapshotWriter writer) throws IOException {
+    writer.writeIntArray(this.entryIds);
+    writer.writeDoubleArray(this.entryBounds);
+    writer.writeDoubleArray(this.nodeBounds);
+    writer.writeIntArray(this.nodeStart);
+    writer.writeIntArray(this.nodeCount);
+    writer.writeIntArray(this.childRefs);
+    writer.writeInt(this.leafCount);
+  }
+
+  /**
+   * Restores a tree written by {@link #writeTo}.
+   *
+   * @param reader the snapshot to read from.
+   * @return the restored tree.
+   */
+  public static SpatialIndex readFrom(SnapshotReader reader) {
+    return new SpatialIndex(
+        reader.readIntArray(),
+        reader.readDoubleArray(),
+        reader.readDoubleArray(),
+        reader.readIntArray(),
+        reader.readIntArray(),
+        reader.readIntArray(),
+        reader.readInt());
+  }
+
+  /**
+   * Returns the ids of every entry whose rectangle intersects the given box, in ascending order.
+   *
+   * @param minX minimum x (longitude) of the box.
+   * @param minY minimum y (latitude) of the box.
+   * @param maxX maximum x (longitude) of the box.
+   * @param maxY maximum y (latitude) of the box.
+   * @return the matching ids, sorted.
+   */
+  public int[] search(double minX, double minY, double maxX, double maxY) {
+    if (this.root < 0 || !intersects(this.nodeBounds, this.root, minX, minY, maxX, maxY)) {
+      return new int[0];
+    }
+    IntList results = new IntList();
+    int[] stack = new int[32];
+    int top = 0;
+    stack[top++] = this.root;
+    while (top > 0) {
+      int node = stack[--top];
+      int start = this.nodeStart[node];
+      int end = start + this.nodeCount[node];
+      if (node < this.leafCount) {
+        for (int e = start; e < end; e++) {
+          if (intersects(this.entryBounds, e, minX, minY, maxX, maxY)) {
+            results.add(this.entryIds[e]);
+          }
+        }
+      } else {
+        for (int r = start; r < end; r++) {
+          int child = this.childRefs[r];
+          if (intersects(this.nodeBounds, child, minX, minY, maxX, maxY)) {
+            if (top == stack.length) {
+              stack = Arrays.copyOf(stack, top * 2);
+            }
+            stack[top++] = child;
+          }
+        }
+      }
+    }
+    int[] ids = results.toArray();
+    Arrays.sort(ids);
+    return ids;
+  }
+
+  /**
+   * Estimates how many entries intersect the given box without visiting any entry: the total size
+   * of the leaves whose bounds intersect it. This is an upper bound on the size of {@link #search},
+   * within a factor of the node capacity for boxes much larger than a leaf.
+   *
+   * @param minX minimum x (longitude) of the box.
+   * @param minY minimum y (latitude) of the box.
+   * @param maxX maximum x (longitude) of the box.
+   * @param maxY maximum y (latitude) of the box.
+   * @return the estimated number of matching entries.
+   */
+  public int estimate(double minX, double minY, double maxX, double maxY) {
+    if (this.root < 0 || !intersects(this.nodeBounds, this.root, minX, minY, maxX, maxY)) {
+      return 0;
+    }
+    int count = 0;
+    int[] stack = new int[32];
+    int top = 0;
+    stack[top++] = this.root;
+    while (top > 0) {
+      int node = stack[--top];
+      if (node < this.leafCount) {
+        count += this.nodeCount[node];
+        continue;
+      }
+      int start = this.nodeStart[node];
+      for (int r = start; r < start + this.nodeCount[node]; r++) {
+        int child = this.childRefs[r];
+        if (intersects(this.nodeBounds, child, minX, minY, maxX, maxY)) {
+          if (top == stack.length) {
+            stack = Arrays.copyOf(stack, top * 2);
+          }
+          stack[top++] = child;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns the number of entries in the index.
+   *
+   * @return the entry count.
+   */
+  public int size() {
+    return this.entryIds.length;
+  }
+
+  /**
+   * Computes the STR packing order of the given rectangles: sort by center x, cut into vertical
+   * slices, then sort each slice by center y.
+   */
+  private static int[] strOrder(double[] bounds, int n, int nodeCapacity) {
+    Integer[] order = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, Comparator.comparingDouble(i -> bounds[i * 4] + bounds[i * 4 + 2]));
+    int sliceSize = (int) Math.ceil(Math.sqrt(ceilDiv(n, nodeCapacity))) * nodeCapacity;
+    Comparator<Integer> byCenterY =
+        Comparator.comparingDouble(i -> bounds[i * 4 + 1] + bounds[i * 4 + 3]);
+    for (int start = 0; start < n; start += sliceSize) {
+      Arrays.sort(order, start, Math.min(n, start + sliceSize), byCenterY);
+    }
+    int[] result = new int[n];
+    for (int i = 0; i < n; i++) {
+      result[i] = order[i];
+    }
+    return result;
+  }
+
+  private static int ceilDiv(int a, int b) {
+    return (a + b - 1) / b;
+  }
+
+  private static void union(double[] src, int start, int count, double[] dst, int node) {
+    dst[node * 4] = Double.POSITIVE_INFINITY;
+    dst[node * 4 + 1] = Double.POSITIVE_INFINITY;
+    dst[node * 4 + 2] = Double.NEGATIVE_INFINITY;
+    dst[node * 4 + 3] = Double.NEGATIVE_INFINITY;
+    for (int i = start; i < start + count; i++) {
+      expand(src, i, dst, node);
+    }
+  }
+
+  private static void expand(double[] src, int i, double[] dst, int node) {
+    dst[node * 4] = Math.min(dst[node * 4], src[i * 4]);
+    dst[node * 4 + 1] = Math.min(dst[node * 4 + 1], src[i * 4 + 1]);
+    dst[node * 4 + 2] = Math.max(dst[node * 4 + 2], src[i * 4 + 2]);
+    dst[node * 4 + 3] = Math.max(dst[node * 4 + 3], src[i * 4 + 3]);
+  }
+
+  private static boolean intersects(
+      double[] b, int i, double minX, double minY, double maxX, double maxY) {
+    return b[i * 4] <= maxX && b[i * 4 + 2] >= minX && b[i * 4 + 1] <= maxY && b[i * 4 + 3] >= minY;
+  }
+}
@@ -0,0 +1,188 @@
+package edu.brown.cs.student.main.server.handlers.redlining;
+
+import java.util.Arrays;
+
+/**
+ * Static helpers for cutting polygons into slippy map tiles. Tiles follow the usual web mercator
+ * z/x/y scheme: zoom z has 2^z by 2^z tiles of 256 pixels, with x growing east and y growing south.
+ * Rings are passed around as interleaved x0, y0, x1, y1, ... arrays of longitude and latitude.
+ */
+public class TileGeometry {
+  public static final int TILE_PIXELS = 256;
+
+  /**
+   * Computes the longitude and latitude bounds of a tile.
+   *
+   * @param z the zoom level.
+   * @param x the tile column.
+   * @param y the tile row.
+   * @return minLong, minLat, maxLong, maxLat of the tile.
+   */
+  public static double[] tileBounds(int z, int x, int y) {
+    double n = Math.pow(2, z);
+    return new double[] {
+      x / n * 360 - 180, tileLatitude(y + 1, n), (x + 1) / n * 360 - 180, tileLatitude(y, n)
+    };
+  }
+
+  /** The latitude of the top edge of tile row y, out of n rows. */
+  private static double tileLatitude(int y, double n) {
+    return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y / n))));
+  }
+
+  /**
+   * Clips a ring to a rectangle with the Sutherland-Hodgman algorithm. The ring may be open or
+   * closed; the result is always closed, or empty if nothing of the ring is left.
+   *
+   * @param ring the ring's interleaved coordinates.
+   * @param minX minimum x (longitude) of the rectangle.
+   * @param minY minimum y (latitude) of the rectangle.
+   * @param maxX maximum x (longitude) of the rectangle.
+   * @param maxY maximum y (latitude) of the rectangle.
+   * @return the clipped ring's interleaved coordinates.
+   */
+  public static double[] clipRing(
+      double[] ring, double minX, double minY, double maxX, double maxY) {
+    double[] clipped = ring;
+    int length = ring.length;
+    // Clip against each edge in turn: 0 = left, 1 = right, 2 = bottom, 3 = top.
+    for (int edge = 0; edge < 4 && length > 0; edge++) {
+      double bound = edge == 0 ? minX : edge == 1 ? maxX : edge == 2 ? minY : maxY;
+      double[] out = new double[length * 2 + 4];
+      int outLength = 0;
+      for (int i = 0; i < length; i += 2) {
+        int prev = (i == 0 ? length : i) - 2;
+        double px = clipped[prev];
+        double py = clipped[prev + 1];
+        double cx = clipped[i];
+        double cy = clipped[i + 1];
+        boolean prevInside = inside(edge, bound, px, py);
+        boolean currInside = inside(edge, bound, cx, cy);
+        if (currInside != prevInside) {
+          // The edge from prev to curr crosses the boundary; add the crossing point.
+          double t = edge < 2 ? (bound - px) / (cx - px) : (bound - py) / (cy - py);
+          out[outLength++] = edge < 2 ? bound : px + t * (cx - px);
+          out[outLength++] = edge < 2 ? py + t * (cy - py) : bound;
+        }
+        if (currInside) {
+          out[outLength++] = cx;
+          out[outLength++] = cy;
+        }
+      }
+      clipped = out;
+      length = outLength;
+    }
+    if (length < 6) {
+      return new double[0];
+    }
+    double[] closed = Arrays.copyOf(clipped, length + 2);
+    closed[length] = clipped[0];
+    closed[length + 1] = clipped[1];
+    return closed;
+  }
+
+  private static boolean inside(int edge, double bound, double x, double y) {
+    switch (edge) {
+      case 0:
+        return x >= bound;
+      case 1:
+        return x <= bound;
+      case 2:
+        return y >= bound;
+      default:
+        return y <= bound;
+    }
+  }
+
+  /**
+   * Simplifies a closed ring with the Douglas-Peucker algorithm, dropping every vertex that lies
+   * within the tolerance of the simplified outline. Uses an explicit stack rather than recursion,
+   * so long rings cannot overflow the call stack.
+   *
+   * @param ring the closed ring's interleaved coordinates.
+   * @param tolerance the largest distance, in degrees, a dropped vertex may lie from the result.
+   * @return the simplified ring's interleaved coordinates, or an empty array if the ring collapses
+   *     to fewer than three distinct vertices.
+   */
+  public static double[] simplifyRing(double[] ring, double tolerance) {
+    int n = ring.length / 2;
+    if (n < 4) {
+      return new double[0];
+    }
+    boolean[] keep = new boolean[n];
+    keep[0] = true;
+    keep[n - 1] = true;
+    // A closed ring starts and ends on the same vertex, so split it at the vertex farthest from
+    // the start first; otherwise every distance would be measured to a single point.
+    int far = 1;
+    for (int i = 2; i < n - 1; i++) {
+      if (distanceSquared(ring, i, 0) > distanceSquared(ring, far, 0)) {
+        far = i;
+      }
+    }
+    keep[far] = true;
+
+    double toleranceSquared = tolerance * tolerance;
+    int[] stack = new int[64];
+    int top = 0;
+    stack[top++] = 0;
+    stack[top++] = far;
+    stack[top++] = far;
+    stack[top++] = n - 1;
+    while (top > 0) {
+      int last = stack[--top];
+      int first = stack[--top];
+      int farthest = -1;
+      double farthestDistance = toleranceSquared;
+      for (int i = first + 1; i < last; i++) {
+        double d = segmentDistanceSquared(ring, i, first, last);
+        if (d > farthestDistance) {
+          farthest = i;
+          farthestDistance = d;
+        }
+      }
+      if (farthest >= 0) {
+        keep[farthest] = true;
+        if (top + 4 > stack.length) {
+          stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top++] = first;
+        stack[top++] = farthest;
+        stack[top++] = farthest;
+        stack[top++] = last;
+      }
+    }
+
+    double[] out = new double[ring.length];
+    int length = 0;
+    for (int i = 0; i < n; i++) {
+      if (keep[i]) {
+        out[length++] = ring[i * 2];
+        out[length++] = ring[i * 2 + 1];
+      }
+    }
+    return length < 8 ? new double[0] : Arrays.copyOf(out, length);
+  }
+
+  private static double distanceSquared(double[] ring, int a, int b) {
+    double dx = ring[a * 2] - ring[b * 2];
+    double dy = ring[a * 2 + 1] - ring[b * 2 + 1];
+    return dx * dx + dy * dy;
+  }
+
+  /** Squared distance from vertex p to the segment from vertex a to vertex b. */
+  private static double segmentDistanceSquared(double[] ring, int p, int a, int b) {
+    double ax = ring[a * 2];
+    double ay = ring[a * 2 + 1];
+    double dx = ring[b * 2] - ax;
+    double dy = ring[b * 2 + 1] - ay;
+    double px = ring[p * 2] - ax;
+    double py = ring[p * 2 + 1] - ay;
+    double lengthSquared = dx * dx + dy * dy;
+    double t = lengthSquared == 0 ? 0 : (px * dx + py * dy) / lengthSquared;
+    t = Math.max(0, Math.min(1, t));
+    double ex = px - t * dx;
+    double ey = py - t * dy;
+    return ex * ex + ey * ey;
+  }
+}
@@ -0,0 +1,61 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/** Tests loading redlining GeoJSON and writing it back out as responses. */
+public class GeoJSONLoaderTest {
+  private static final String DATA =
+      "{\"type\":\"FeatureCollection\",\"features\":["
+          + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"MultiPolygon\",\"coordinates\":"
+          + "[[[[-71.4,41.8],[-71.3,41.8],[-71.3,41.9],[-71.4,41.8]]]]},"
+          + "\"properties\":{\"city\":\"Providence\",\"holc_grade\":\"B\","
+          + "\"area_description_data\":{\"a\":\"Near the school\"}}},"
+          + "{\"type\":\"Feature\",\"geometry\":null,"
+          + "\"properties\":{\"city\":\"Providence\",\"holc_grade\":\"D\","
+          + "\"area_description_data\":{\"a\":\"No map\"}}}]}";
+
+  /** Writes a GeoJSON string to a temporary file and loads it. */
+  static GeoJSONObject load(String json) throws IOException {
+    Path file = Files.createTempFile("redlining", ".json");
+    try {
+      Files.writeString(file, json);
+      return GeoJSONLoader.load(file.toString());
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void keepsFeaturesWithoutGeometry() throws IOException {
+    GeoJSONObject geoJSONObject = load(DATA);
+
+    assertEquals(2, geoJSONObject.features.size());
+    assertNotNull(geoJSONObject.features.get(0).geometry);
+    assertNull(geoJSONObject.features.get(1).geometry);
+    assertEquals("D", geoJSONObject.features.get(1).properties.holc_grade);
+  }
+
+  @Test
+  public void writesFeaturesWithoutGeometry() throws IOException {
+    GeoJSONObject geoJSONObject = load(DATA);
+    geoJSONObject.buildIndex();
+
+    String response = new String(geoJSONObject.toResponseJson(), StandardCharsets.UTF_8);
+    assertTrue(response.contains("\"coordinates\":[[[[-71.4,41.8],"), response);
+    // Moshi leaves null fields out, so the feature without a geometry has none.
+    assertTrue(
+        response.contains("{\"properties\":{\"area_description_data\":{\"a\":\"No map\"}"),
+        response);
+    assertEquals(1, geoJSONObject.queryKeyWords(List.of("no map"), true, false).length);
+  }
+}
@@ -0,0 +1,163 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Tests writing redlining snapshots and deciding when one can be used. */
+public class GeoJSONSnapshotTest {
+  private static final String DATA =
+      "{\"type\":\"FeatureCollection\",\"features\":["
+          + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"MultiPolygon\",\"coordinates\":"
+          + "[[[[-71.4,41.8],[-71.3,41.8],[-71.3,41.9],[-71.4,41.8]]]]},"
+          + "\"properties\":{\"city\":\"Providence\",\"holc_grade\":\"B\","
+          + "\"area_description_data\":{\"a\":\"Near the school\"}}}]}";
+
+  // Holes, several polygons, a missing geometry and a missing description.
+  private static final String MIXED_DATA =
+      "{\"type\":\"FeatureCollection\",\"features\":["
+          + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"MultiPolygon\",\"coordinates\":"
+          + "[[[[-71.4,41.8],[-71.3,41.8],[-71.3,41.9],[-71.4,41.8]]]]},"
+          + "\"properties\":{\"city\":\"Providence\",\"holc_grade\":\"B\","
+          + "\"area_description_data\":{\"a\":\"Near the school\",\"b\":\"Mill workers\"}}},"
+          + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"MultiPolygon\",\"coordinates\":"
+          + "[[[[-71.0,42.3],[-71.1,42.3],[-71.1,42.4],[-71.0,42.4],[-71.0,42.3]],"
+          + "[[-71.04,42.34],[-71.06,42.34],[-71.06,42.36],[-71.04,42.34]]],"
+          + "[[[-70.9,42.2],[-70.8,42.2],[-70.8,42.25],[-70.9,42.2]]]]},"
+          + "\"properties\":{\"city\":\"Boston\",\"holc_grade\":\"D\","
+          + "\"area_description_data\":{\"a\":\"Railroad yards, school nearby\"}}},"
+          + "{\"type\":\"Feature\",\"geometry\":null,"
+          + "\"properties\":{\"city\":\"Boston\",\"holc_grade\":\"C\","
+          + "\"area_description_data\":{\"a\":\"No map\"}}},"
+          + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"MultiPolygon\",\"coordinates\":"
+          + "[[[[-71.2,42.0],[-71.15,42.0],[-71.15,42.05],[-71.2,42.0]]]]},"
+          + "\"properties\":{\"city\":\"Brockton\",\"holc_grade\":\"A\"}}]}";
+
+  private Path directory;
+  private Path source;
+  private Path snapshot;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    this.directory = Files.createTempDirectory("snapshot");
+    this.source = this.directory.resolve("data.json");
+    this.snapshot = this.directory.resolve("data.snapshot");
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(this.directory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  /** Writes the JSON source, then loads, indexes and snapshots it. */
+  private GeoJSONObject writeSnapshot(String json) throws IOException {
+    Files.writeString(this.source, json);
+    GeoJSONSnapshot.Source attributes = GeoJSONSnapshot.Source.of(this.source.toString());
+    GeoJSONObject geoJSONObject = GeoJSONLoader.load(this.source.toString());
+    geoJSONObject.buildIndex();
+    GeoJSONSnapshot.write(geoJSONObject, this.snapshot.toString(), attributes);
+    return geoJSONObject;
+  }
+
+  private boolean isFresh() {
+    return GeoJSONSnapshot.isFresh(this.snapshot.toString(), this.source.toString());
+  }
+
+  @Test
+  public void snapshotOfUnchangedSourceIsFresh() throws IOException {
+    this.writeSnapshot(DATA);
+    assertTrue(this.isFresh());
+  }
+
+  @Test
+  public void missingSnapshotIsNotFresh() {
+    assertFalse(this.isFresh());
+  }
+
+  @Test
+  public void sourceReplacedWithOlderTimestampIsNotFresh() throws IOException {
+    this.writeSnapshot(DATA);
+    FileTime written = Files.getLastModifiedTime(this.source);
+
+    // Like cp -p or unpacking an archive: new contents, but an older modification time.
+    Files.writeString(this.source, DATA.replace("school", "church"));
+    Files.setLastModifiedTime(this.source, FileTime.fromMillis(written.toMillis() - 60_000));
+    assertFalse(this.isFresh());
+  }
+
+  @Test
+  public void sourceTouchedWithoutChangesIsNotFresh() throws IOException {
+    this.writeSnapshot(DATA);
+    FileTime written = Files.getLastModifiedTime(this.source);
+
+    Files.setLastModifiedTime(this.source, FileTime.fromMillis(written.toMillis() + 60_000));
+    assertFalse(this.isFresh());
+  }
+
+  @Test
+  public void readSnapshotAnswersLikeTheJson() throws IOException {
+    GeoJSONObject loaded = this.writeSnapshot(MIXED_DATA);
+    GeoJSONObject read = GeoJSONSnapshot.read(this.snapshot.toString());
+
+    assertEquals(loaded.version(), read.version());
+    assertArrayEquals(loaded.fullResponseGzip(), read.fullResponseGzip());
+    assertArrayEquals(loaded.toResponseJson(), read.toResponseJson());
+    assertEquals(loaded.features.size(), read.features.size());
+    for (int id = 0; id < loaded.features.size(); id++) {
+      assertArrayEquals(loaded.toResponseJson(new int[] {id}), read.toResponseJson(new int[] {id}));
+    }
+
+    double[][] boxes = {
+      {41.7, 42.5, -71.5, -70.7},
+      {41.85, 41.86, -71.36, -71.35},
+      {42.35, 42.35, -71.05, -71.05},
+      {42.2, 42.3, -71.2, -70.8},
+      {0, 1, 0, 1}
+    };
+    for (double[] box : boxes) {
+      for (boolean exact : new boolean[] {false, true}) {
+        assertArrayEquals(
+            loaded.queryBounds(box[0], box[1], box[2], box[3], exact),
+            read.queryBounds(box[0], box[1], box[2], box[3], exact));
+      }
+    }
+
+    for (String keyword : List.of("school", "SCHOOL", "no map", "s", "ro", "mill workers", "x")) {
+      for (boolean wholeTokens : new boolean[] {false, true}) {
+        assertArrayEquals(
+            loaded.queryKeyWords(List.of(keyword), true, wholeTokens),
+            read.queryKeyWords(List.of(keyword), true, wholeTokens));
+      }
+    }
+    assertArrayEquals(
+        loaded.queryKeyWords(List.of("school", "map"), false, false),
+        read.queryKeyWords(List.of("school", "map"), false, false));
+
+    // The comparisons above mean something only if the queries find features.
+    assertArrayEquals(new int[] {0, 1, 3}, read.queryBounds(41.7, 42.5, -71.5, -70.7, false));
+    assertArrayEquals(new int[] {0, 1}, read.queryKeyWords(List.of("school"), true, false));
+  }
+
+  @Test
+  public void foreignFileIsNotFresh() throws IOException {
+    Files.writeString(this.source, DATA);
+    Files.writeString(this.snapshot, "not a snapshot");
+    assertFalse(this.isFresh());
+  }
+}
@@ -0,0 +1,156 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Tests cutting query results into pages and resuming them from cursors. */
+public class PaginationTest {
+  private GeoJSONObject geoJSONObject;
+
+  /** A dataset of the given number of features, one per city. */
+  private static String data(int features) {
+    StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+    for (int i = 0; i < features; i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      json.append("{\"type\":\"Feature\",\"geometry\":null,\"properties\":{\"city\":\"City ")
+          .append(i)
+          .append("\",\"holc_grade\":\"A\"}}");
+    }
+    return json.append("]}").toString();
+  }
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    this.geoJSONObject = GeoJSONLoaderTest.load(data(20));
+  }
+
+  /** A cursor as Pagination encodes it, for a feature it might never have sent. */
+  private static String cursor(String version, int lastId) {
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString((version + ":" + lastId).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** Follows next cursors from the first page to the last, returning every page's ids. */
+  private List<int[]> walk(int[] ids, String limit) {
+    List<int[]> pages = new ArrayList<>();
+    String cursor = null;
+    do {
+      Pagination.Page page = Pagination.page(this.geoJSONObject, ids, limit, cursor);
+      pages.add(page.ids());
+      cursor = page.nextCursor();
+    } while (cursor != null);
+    return pages;
+  }
+
+  @Test
+  public void pagesCoverEveryResultOnce() {
+    int[] evens = IntStream.range(0, 20).filter(id -> id % 2 == 0).toArray();
+    for (int[] ids : new int[][] {this.geoJSONObject.allIds(), evens, new int[0]}) {
+      for (int limit = 1; limit <= ids.length + 1; limit++) {
+        List<int[]> pages = this.walk(ids, Integer.toString(limit));
+        // Concatenating the pages in order gives every result once, so none overlap or are skipped.
+        int[] joined = pages.stream().flatMapToInt(IntStream::of).toArray();
+        assertArrayEquals(ids, joined);
+        for (int[] page : pages) {
+          assertTrue(page.length <= limit);
+        }
+        assertEquals(Math.max(1, (ids.length + limit - 1) / limit), pages.size());
+      }
+    }
+  }
+
+  @Test
+  public void pagesWithoutLimitHoldMaxLimit() {
+    int[] ids = IntStream.range(0, Pagination.MAX_LIMIT + 1).toArray();
+    Pagination.Page first = Pagination.page(this.geoJSONObject, ids, null, null);
+    assertEquals(Pagination.MAX_LIMIT, first.ids().length);
+    assertNotNull(first.nextCursor());
+    Pagination.Page second = Pagination.page(this.geoJSONObject, ids, null, first.nextCursor());
+    assertArrayEquals(new int[] {Pagination.MAX_LIMIT}, second.ids());
+    assertNull(second.nextCursor());
+  }
+
+  @Test
+  public void cursorPastTheEndGivesAnEmptyLastPage() {
+    int[] ids = this.geoJSONObject.allIds();
+    String cursor = cursor(this.geoJSONObject.version(), ids.length + 100);
+    Pagination.Page page = Pagination.page(this.geoJSONObject, ids, "5", cursor);
+    assertEquals(0, page.ids().length);
+    assertNull(page.nextCursor());
+  }
+
+  @Test
+  public void cursorResumesAfterFeaturesThatNoLongerMatch() {
+    // The last feature sent need not be among the results; the next page starts after it anyway.
+    int[] odds = {1, 3, 5, 7};
+    String cursor = cursor(this.geoJSONObject.version(), 4);
+    assertArrayEquals(
+        new int[] {5, 7}, Pagination.page(this.geoJSONObject, odds, "5", cursor).ids());
+  }
+
+  @Test
+  public void invalidLimitsAreRejected() {
+    int[] ids = this.geoJSONObject.allIds();
+    for (String limit : List.of("0", "-1", Integer.toString(Pagination.MAX_LIMIT + 1), "ten", "")) {
+      assertThrows(
+          IllegalArgumentException.class,
+          () -> Pagination.page(this.geoJSONObject, ids, limit, null),
+          limit);
+    }
+    assertEquals(
+        ids.length,
+        Pagination.page(this.geoJSONObject, ids, Integer.toString(Pagination.MAX_LIMIT), null)
+            .ids()
+            .length);
+  }
+
+  @Test
+  public void malformedCursorsAreRejected() {
+    int[] ids = this.geoJSONObject.allIds();
+    String version = this.geoJSONObject.version();
+    String noColon =
+        Base64.getUrlEncoder()
+            .withoutPadding()
+            .encodeToString(version.getBytes(StandardCharsets.UTF_8));
+    String notAnId =
+        Base64.getUrlEncoder()
+            .withoutPadding()
+            .encodeToString((version + ":x").getBytes(StandardCharsets.UTF_8));
+    for (String cursor : List.of("not base64!", "a", noColon, notAnId)) {
+      assertThrows(
+          IllegalArgumentException.class,
+          () -> Pagination.page(this.geoJSONObject, ids, "5", cursor),
+          cursor);
+    }
+  }
+
+  @Test
+  public void cursorFromAnotherVersionIsRejected() throws IOException {
+    GeoJSONObject reloaded = GeoJSONLoaderTest.load(data(21));
+    assertNotEquals(this.geoJSONObject.version(), reloaded.version());
+
+    String cursor = Pagination.page(reloaded, reloaded.allIds(), "5", null).nextCursor();
+    IllegalArgumentException e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> Pagination.page(this.geoJSONObject, this.geoJSONObject.allIds(), "5", cursor));
+    assertTrue(e.getMessage().contains("older version"));
+  }
+}
@@ -0,0 +1,181 @@
+package edu.brown.cs.student.main.server.handlers.census.caching;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.handlers.census.CensusData;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Tests reading the census log back after writes, crashes and compaction. */
+public class CensusLogTest {
+  // Long enough that background compaction never runs during a test.
+  private static final Duration NEVER = Duration.ofHours(1);
+
+  private Path directory;
+  private Path file;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    this.directory = Files.createTempDirectory("census");
+    this.file = this.directory.resolve("broadband.log");
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(this.directory)) {
+      for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  private CensusLog open() throws IOException {
+    return this.open(CensusLog.DEFAULT_TTL);
+  }
+
+  /** Opens the log with a time to live; a zero one writes records that are already expired. */
+  private CensusLog open(Duration ttl) throws IOException {
+    return new CensusLog(this.file, ttl, NEVER);
+  }
+
+  private static CensusData data(String county, String broadband) {
+    return new CensusData(county + ", Rhode Island", broadband, "44", "007", "2024-01-01 00:00:00");
+  }
+
+  @Test
+  public void recordsSurviveReopening() throws IOException {
+    try (CensusLog log = this.open()) {
+      log.putCounty("ri:providence", data("Providence", "85.1"));
+      log.putState("ri", Map.of("kent", data("Kent", "88.0")));
+    }
+    try (CensusLog log = this.open()) {
+      assertEquals(data("Providence", "85.1"), log.county("ri:providence"));
+      assertEquals(Map.of("kent", data("Kent", "88.0")), log.state("ri"));
+      assertNull(log.county("ri:kent"));
+    }
+  }
+
+  @Test
+  public void tornFinalRecordIsCutOff() throws IOException {
+    long oneRecord;
+    try (CensusLog log = this.open()) {
+      log.putCounty("ri:providence", data("Providence", "85.1"));
+      oneRecord = Files.size(this.file);
+      log.putCounty("ri:kent", data("Kent", "88.0"));
+    }
+    // A crash part way through writing the second record.
+    try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.WRITE)) {
+      channel.truncate(Files.size(this.file) - 5);
+    }
+
+    try (CensusLog log = this.open()) {
+      assertEquals(data("Providence", "85.1"), log.county("ri:providence"));
+      assertNull(log.county("ri:kent"));
+      assertEquals(oneRecord, Files.size(this.file));
+      log.putCounty("ri:bristol", data("Bristol", "90.2"));
+    }
+    // Records appended after the cut are read back too.
+    try (CensusLog log = this.open()) {
+      assertEquals(data("Providence", "85.1"), log.county("ri:providence"));
+      assertEquals(data("Bristol", "90.2"), log.county("ri:bristol"));
+    }
+  }
+
+  @Test
+  public void recordNotMatchingItsChecksumIsCutOff() throws IOException {
+    long oneRecord;
+    try (CensusLog log = this.open()) {
+      log.putCounty("ri:providence", data("Providence", "85.1"));
+      oneRecord = Files.size(this.file);
+      log.putCounty("ri:kent", data("Kent", "88.0"));
+    }
+    // Flip the last byte of the second record's data, just before its eight byte checksum.
+    byte[] bytes = Files.readAllBytes(this.file);
+    bytes[bytes.length - Long.BYTES - 1] ^= 0x01;
+    Files.write(this.file, bytes);
+
+    try (CensusLog log = this.open()) {
+      assertEquals(data("Providence", "85.1"), log.county("ri:providence"));
+      assertNull(log.county("ri:kent"));
+      assertEquals(oneRecord, Files.size(this.file));
+    }
+  }
+
+  @Test
+  public void newerRecordReplacesOlder() throws IOException {
+    try (CensusLog log = this.open()) {
+      log.putCounty("ri:providence", data("Providence", "85.1"));
+      log.putCounty("ri:providence", data("Providence", "86.4"));
+      log.putState("ri", Map.of("kent", data("Kent", "88.0")));
+      log.putState("ri", Map.of("kent", data("Kent", "89.9")));
+    }
+    try (CensusLog log = this.open()) {
+      assertEquals(data("Providence", "86.4"), log.county("ri:providence"));
+      assertEquals(Map.of("kent", data("Kent", "89.9")), log.state("ri"));
+    }
+  }
+
+  @Test
+  public void expiredRecordsAreDropped() throws IOException {
+    try (CensusLog log = this.open()) {
+      log.putCounty("ri:providence", data("Providence", "85.1"));
+      log.putCounty("ri:kent", data("Kent", "88.0"));
+    }
+    try (CensusLog log = this.open(Duration.ZERO)) {
+      log.putCounty("ri:bristol", data("Bristol", "90.2"));
+      log.putState("ri", Map.of("kent", data("Kent", "88.0")));
+      // An expired record also drops the live one it replaces.
+      log.putCounty("ri:kent", data("Kent", "89.9"));
+      assertNull(log.county("ri:bristol"));
+    }
+    try (CensusLog log = this.open()) {
+      assertEquals(data("Providence", "85.1"), log.county("ri:providence"));
+      assertNull(log.county("ri:bristol"));
+      assertNull(log.county("ri:kent"));
+      assertNull(log.state("ri"));
+    }
+  }
+
+  @Test
+  public void compactionKeepsOnlyLiveRecords() throws IOException {
+    try (CensusLog log = this.open(Duration.ZERO)) {
+      log.putCounty("ri:bristol", data("Bristol", "90.2"));
+    }
+    long uncompacted;
+    try (CensusLog log = this.open()) {
+      log.putCounty("ri:providence", data("Providence", "85.1"));
+      log.putCounty("ri:providence", data("Providence", "86.4"));
+      log.putState("ri", Map.of("kent", data("Kent", "88.0")));
+      uncompacted = Files.size(this.file);
+      log.compact();
+      assertTrue(Files.size(this.file) < uncompacted);
+      assertEquals(data("Providence", "86.4"), log.county("ri:providence"));
+    }
+
+    // The compacted log is the size of one holding just the live records.
+    Path expected = this.directory.resolve("expected.log");
+    try (CensusLog log = new CensusLog(expected, CensusLog.DEFAULT_TTL, NEVER)) {
+      log.putCounty("ri:providence", data("Providence", "86.4"));
+      log.putState("ri", Map.of("kent", data("Kent", "88.0")));
+    }
+    assertEquals(Files.size(expected), Files.size(this.file));
+
+    try (CensusLog log = this.open()) {
+      assertEquals(data("Providence", "86.4"), log.county("ri:providence"));
+      assertEquals(Map.of("kent", data("Kent", "88.0")), log.state("ri"));
+      assertNull(log.county("ri:bristol"));
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package edu.brown.cs.student.main.server.handlers.census.caching;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/** Tests the admission, loading and weighing of GenericCache. */
+public class GenericCacheTest {
+
+  private static GenericCache<String, String> frequencyCache(int size) {
+    return GenericCache.<String, String>builder()
+        .maximumSize(size)
+        .policy(GenericCache.Policy.FREQUENCY)
+        .build();
+  }
+
+  @Test
+  public void fullFrequencyCacheAdmitsKeysRequestedTwice() {
+    GenericCache<String, String> cache = frequencyCache(2);
+    for (String key : List.of("a", "b")) {
+      assertNull(cache.get(key));
+      cache.put(key, key.toUpperCase());
+    }
+
+    // Requested once: turned away, and the entries already kept stay.
+    assertNull(cache.get("c"));
+    cache.put("c", "C");
+    assertNull(cache.get("c"));
+    assertEquals(1, cache.stats().rejections());
+    assertEquals(0, cache.stats().evictions());
+
+    // Requested twice by now: admitted, evicting the least recently used entry.
+    cache.put("c", "C");
+    assertEquals("C", cache.get("c"));
+    assertEquals(1, cache.stats().rejections());
+    assertEquals(1, cache.stats().evictions());
+    assertEquals(2, cache.stats().size());
+  }
+
+  @Test
+  public void concurrentMissesOnUnadmittedKeyLoadOnce() throws Exception {
+    GenericCache<String, String> cache = frequencyCache(1);
+    assertEquals("A", cache.get("a", () -> "A"));
+
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    List<CompletableFuture<String>> results = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      CompletableFuture<String> result = new CompletableFuture<>();
+      Thread thread =
+          new Thread(
+              () -> {
+                try {
+                  result.complete(
+                      cache.get(
+                          "z",
+                          () -> {
+                            loads.incrementAndGet();
+                            release.await();
+                            return "Z";
+                          }));
+                } catch (ExecutionException | RuntimeException e) {
+                  result.completeExceptionally(e);
+                }
+              });
+      results.add(result);
+      threads.add(thread);
+      thread.start();
+    }
+
+    // Every thread is parked: one in the loader, the rest waiting for its value.
+    while (!threads.stream().allMatch(thread -> thread.getState() == Thread.State.WAITING)) {
+      Thread.sleep(5);
+    }
+    release.countDown();
+    for (CompletableFuture<String> result : results) {
+      assertEquals("Z", result.get());
+    }
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void weightReturnsToZeroAfterInvalidateAll() {
+    GenericCache<String, String> cache =
+        GenericCache.<String, String>builder()
+            .maximumWeight(1000, (key, value) -> key.length() + value.length())
+            .build();
+    cache.put("a", "xx");
+    cache.put("bb", "yyyy");
+    assertEquals(9, cache.stats().weightBytes());
+
+    // A replaced value's weight is taken off.
+    cache.put("a", "x");
+    assertEquals(8, cache.stats().weightBytes());
+
+    cache.invalidateAll();
+    assertEquals(0, cache.stats().weightBytes());
+    assertEquals(0, cache.stats().size());
+    assertNull(cache.get("a"));
+    assertNull(cache.get("bb"));
+  }
+}
@@ -0,0 +1,107 @@
+package edu.brown.cs.student.main.server.handlers.redlining;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Tests substring search on the keyword index against a scan of every description. */
+public class KeywordIndexTest {
+  private static final String ALPHABET = "abcAB ";
+
+  private List<Map<String, String>> descriptions;
+  private KeywordIndex index;
+  private Random random;
+
+  @BeforeEach
+  public void setUp() {
+    this.random = new Random(42);
+    this.descriptions = new ArrayList<>();
+    for (int id = 0; id < 500; id++) {
+      if (id % 10 == 0) {
+        this.descriptions.add(null);
+        continue;
+      }
+      Map<String, String> description = new HashMap<>();
+      for (int key = this.random.nextInt(3); key >= 0; key--) {
+        description.put("k" + key, this.randomText(this.random.nextInt(8)));
+      }
+      this.descriptions.add(description);
+    }
+    this.index = new KeywordIndex(this.descriptions);
+  }
+
+  /** Random text over a small alphabet, so short terms match often and longer ones sometimes. */
+  private String randomText(int length) {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      text.append(ALPHABET.charAt(this.random.nextInt(ALPHABET.length())));
+    }
+    return text.toString();
+  }
+
+  /** The ids of the features with a description value containing the term, ignoring case. */
+  private int[] scan(String term) {
+    String lower = term.toLowerCase(Locale.ROOT);
+    List<Integer> ids = new ArrayList<>();
+    for (int id = 0; id < this.descriptions.size(); id++) {
+      Map<String, String> description = this.descriptions.get(id);
+      if (description == null) {
+        continue;
+      }
+      for (String value : description.values()) {
+        if (value.toLowerCase(Locale.ROOT).contains(lower)) {
+          ids.add(id);
+          break;
+        }
+      }
+    }
+    return ids.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  /** Checks every term of each length up to four against the scan. */
+  private void assertMatchesScan(KeywordIndex keywordIndex) {
+    for (int length = 1; length <= 4; length++) {
+      for (int i = 0; i < 50; i++) {
+        String term = this.randomText(length);
+        int[] expected = this.scan(term);
+        assertArrayEquals(expected, keywordIndex.search(List.of(term), true, false), term);
+        assertTrue(keywordIndex.estimate(List.of(term), true, false) >= expected.length, term);
+      }
+    }
+  }
+
+  @Test
+  public void substringSearchMatchesScan() {
+    this.assertMatchesScan(this.index);
+  }
+
+  @Test
+  public void shortTermEstimatesAreExact() {
+    for (String term : List.of("a", "B", "ab", "c ", "zz")) {
+      assertEquals(this.scan(term).length, this.index.estimate(List.of(term), true, false), term);
+    }
+  }
+
+  @Test
+  public void restoredIndexMatchesScan() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (SnapshotWriter writer = new SnapshotWriter(bytes)) {
+      this.index.writeTo(writer);
+    }
+    this.assertMatchesScan(
+        KeywordIndex.readFrom(
+            new SnapshotReader(ByteBuffer.wrap(bytes.toByteArray())), this.descriptions));
+  }
+}
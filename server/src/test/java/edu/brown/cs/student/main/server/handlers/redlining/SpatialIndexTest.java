@@ -0,0 +1,136 @@
+package edu.brown.cs.student.main.server.handlers.redlining;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/** Tests the packed R-tree against a scan of every entry's envelope. */
+public class SpatialIndexTest {
+  private final Random random = new Random(7);
+
+  /** Random rectangles, four doubles each, mostly small with the odd large one. */
+  private double[] randomBounds(int n) {
+    double[] bounds = new double[n * 4];
+    for (int i = 0; i < n; i++) {
+      double x = this.random.nextDouble() * 100;
+      double y = this.random.nextDouble() * 100;
+      double size = this.random.nextInt(20) == 0 ? 30 : this.random.nextDouble() * 2;
+      bounds[i * 4] = x;
+      bounds[i * 4 + 1] = y;
+      bounds[i * 4 + 2] = x + size * this.random.nextDouble();
+      bounds[i * 4 + 3] = y + size * this.random.nextDouble();
+    }
+    return bounds;
+  }
+
+  /** Distinct ids in no particular order, so results have to be sorted by the index. */
+  private static int[] ids(int n) {
+    int[] ids = new int[n];
+    for (int i = 0; i < n; i++) {
+      ids[i] = (i * 7919) % n * 3 + 1;
+    }
+    return ids;
+  }
+
+  /** The ids of every entry intersecting the box, found by checking each envelope. */
+  private static int[] scan(
+      int[] ids, double[] bounds, double minX, double minY, double maxX, double maxY) {
+    List<Integer> matches = new ArrayList<>();
+    for (int i = 0; i < ids.length; i++) {
+      if (bounds[i * 4] <= maxX
+          && bounds[i * 4 + 2] >= minX
+          && bounds[i * 4 + 1] <= maxY
+          && bounds[i * 4 + 3] >= minY) {
+        matches.add(ids[i]);
+      }
+    }
+    return matches.stream().mapToInt(Integer::intValue).sorted().toArray();
+  }
+
+  /** Checks random boxes, from empty to wider than the data, against the scan. */
+  private void assertMatchesScan(SpatialIndex index, int[] ids, double[] bounds) {
+    for (int i = 0; i < 300; i++) {
+      double minX = this.random.nextDouble() * 120 - 10;
+      double minY = this.random.nextDouble() * 120 - 10;
+      double maxX = minX + this.random.nextDouble() * (i % 3 == 0 ? 60 : 5);
+      double maxY = minY + this.random.nextDouble() * (i % 3 == 0 ? 60 : 5);
+      int[] expected = scan(ids, bounds, minX, minY, maxX, maxY);
+      assertArrayEquals(expected, index.search(minX, minY, maxX, maxY));
+      int estimate = index.estimate(minX, minY, maxX, maxY);
+      assertTrue(estimate >= expected.length && estimate <= ids.length);
+    }
+  }
+
+  @Test
+  public void searchMatchesScan() {
+    for (int capacity : new int[] {2, 3, SpatialIndex.DEFAULT_NODE_CAPACITY}) {
+      for (int n : new int[] {0, 1, 2, capacity, capacity + 1, 1000}) {
+        int[] ids = ids(n);
+        double[] bounds = this.randomBounds(n);
+        SpatialIndex index = new SpatialIndex(ids, bounds, capacity);
+        assertEquals(n, index.size());
+        this.assertMatchesScan(index, ids, bounds);
+      }
+    }
+  }
+
+  @Test
+  public void emptyIndexMatchesNothing() {
+    SpatialIndex index = new SpatialIndex(new int[0], new double[0], 16);
+    assertArrayEquals(new int[0], index.search(-1e9, -1e9, 1e9, 1e9));
+    assertEquals(0, index.estimate(-1e9, -1e9, 1e9, 1e9));
+  }
+
+  @Test
+  public void singleEntryMatchesBoxesTouchingIt() {
+    SpatialIndex index = new SpatialIndex(new int[] {5}, new double[] {1, 1, 2, 2}, 16);
+    assertArrayEquals(new int[] {5}, index.search(2, 2, 3, 3));
+    assertArrayEquals(new int[] {5}, index.search(1.5, 1.5, 1.5, 1.5));
+    assertArrayEquals(new int[0], index.search(2.1, 0, 3, 3));
+    assertEquals(1, index.estimate(0, 0, 1, 1));
+    assertEquals(0, index.estimate(0, 0, 0.5, 0.5));
+  }
+
+  @Test
+  public void packingGroupsNearbyEntries() {
+    // A 100 by 100 grid of unit cells, given in row order. With STR packing a box over one cell
+    // meets only the few leaves around it; a packing ignoring position would meet most of them.
+    int side = 100;
+    int[] ids = ids(side * side);
+    double[] bounds = new double[side * side * 4];
+    for (int i = 0; i < side * side; i++) {
+      bounds[i * 4] = i % side;
+      bounds[i * 4 + 1] = i / side;
+      bounds[i * 4 + 2] = i % side + 0.9;
+      bounds[i * 4 + 3] = i / side + 0.9;
+    }
+    SpatialIndex index = new SpatialIndex(ids, bounds, 16);
+    for (int i = 0; i < 100; i++) {
+      double x = this.random.nextInt(side) + 0.95;
+      double y = this.random.nextInt(side) + 0.95;
+      assertTrue(index.estimate(x - 0.5, y - 0.5, x, y) <= 4 * 16);
+    }
+    assertEquals(side * side, index.estimate(0, 0, side, side));
+  }
+
+  @Test
+  public void restoredIndexMatchesScan() throws IOException {
+    int[] ids = ids(500);
+    double[] bounds = this.randomBounds(500);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (SnapshotWriter writer = new SnapshotWriter(bytes)) {
+      new SpatialIndex(ids, bounds, 16).writeTo(writer);
+    }
+    SpatialIndex restored =
+        SpatialIndex.readFrom(new SnapshotReader(ByteBuffer.wrap(bytes.toByteArray())));
+    this.assertMatchesScan(restored, ids, bounds);
+  }
+}